@@ -0,0 +1,92 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.aerogear.connectivity.message.job.PushJob;
+import org.aerogear.connectivity.message.sender.PushNetwork;
+import org.aerogear.connectivity.model.PushApplication;
+import org.aerogear.connectivity.service.impl.SenderServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One broadcast through {@link SenderServiceImpl}: paging the device tokens of every variant,
+ * chunking them onto the worker pool of the network, and the sender's per-token work (hex
+ * decoding for APNs, the multicast JSON for GCM). The Push Networks and the database are
+ * stubbed, see {@link StubPushNetworks}. The tokens are spread evenly over the variants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FanOutBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int tokens;
+
+    @Param({"1", "10", "50"})
+    private int variants;
+
+    @Param({"IOS", "ANDROID", "SIMPLE_PUSH"})
+    private PushNetwork network;
+
+    private StubPushNetworks stubs;
+    private SenderServiceImpl senderService;
+    private PushApplication pushApplication;
+    private Map<String, Object> message;
+
+    @Setup
+    public void createSenderService() {
+        stubs = new StubPushNetworks(tokens / variants);
+        senderService = stubs.createSenderService();
+        pushApplication = stubs.createPushApplication(variants);
+
+        message = new HashMap<String, Object>();
+        message.put("alert", "HELLO!");
+        message.put("sound", "default");
+        message.put("badge", 7);
+        message.put("simple-push", "version=123");
+    }
+
+    @TearDown
+    public void shutdown() {
+        stubs.shutdown();
+    }
+
+    @Benchmark
+    public PushJob broadcast() {
+        final PushJob job = new PushJob("benchmark", pushApplication.getPushApplicationID(), 1);
+        senderService.broadcast(pushApplication, network, message, job);
+        return job;
+    }
+}
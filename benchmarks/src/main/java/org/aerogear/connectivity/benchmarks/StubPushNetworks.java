@@ -0,0 +1,325 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.message.cache.APNsCache;
+import org.aerogear.connectivity.message.cache.GCMCache;
+import org.aerogear.connectivity.message.cache.GCMTransport;
+import org.aerogear.connectivity.message.dispatch.PushNetworkExecutors;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
+import org.aerogear.connectivity.message.sender.APNsPushNotificationSender;
+import org.aerogear.connectivity.message.sender.GCMPushNotificationSender;
+import org.aerogear.connectivity.message.sender.SimplePushNotificationSender;
+import org.aerogear.connectivity.metrics.PushMetrics;
+import org.aerogear.connectivity.model.AndroidVariant;
+import org.aerogear.connectivity.model.PushApplication;
+import org.aerogear.connectivity.model.SimplePushVariant;
+import org.aerogear.connectivity.model.iOSVariant;
+import org.aerogear.connectivity.service.PushFeedbackService;
+import org.aerogear.connectivity.service.impl.SenderServiceImpl;
+
+import com.google.android.gcm.server.Message;
+import com.google.android.gcm.server.MulticastResult;
+import com.notnoop.apns.ApnsService;
+
+/**
+ * Wires a {@link SenderServiceImpl} (with the real senders and worker pools) the way CDI does,
+ * but with offline stand-ins for the database and the Push Networks:
+ * <ul>
+ * <li>the DAO serves <code>tokensPerVariant</code> device tokens per variant, page by page</li>
+ * <li>APNs accepts every push, without a connection</li>
+ * <li>GCM answers every multicast request with a success for each registration ID; the
+ * request JSON is built and the response is parsed, as for the real service</li>
+ * <li>SimplePush acknowledges every channel, without a request</li>
+ * </ul>
+ */
+public class StubPushNetworks {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int tokensPerVariant;
+
+    private final PushMetrics metrics = new PushMetrics();
+    private final PushNetworkExecutors executors = new PushNetworkExecutors();
+    private final GCMPushNotificationSender gcmSender = new GCMPushNotificationSender();
+
+    public StubPushNetworks(int tokensPerVariant) {
+        this.tokensPerVariant = tokensPerVariant;
+    }
+
+    public SenderServiceImpl createSenderService() {
+        inject(executors, "metrics", metrics);
+        executors.createExecutors();
+
+        final APNsPushNotificationSender apnsSender = new APNsPushNotificationSender();
+        inject(apnsSender, "apnsCache", new StubAPNsCache());
+        inject(apnsSender, "logger", logger(APNsPushNotificationSender.class));
+
+        inject(gcmSender, "cache", new StubGCMCache());
+        inject(gcmSender, "logger", logger(GCMPushNotificationSender.class));
+        inject(gcmSender, "pushFeedbackService", stub(PushFeedbackService.class, null));
+        inject(gcmSender, "metrics", metrics);
+        gcmSender.createRetryScheduler();
+
+        final SenderServiceImpl senderService = new SenderServiceImpl();
+        inject(senderService, "logger", logger(SenderServiceImpl.class));
+        inject(senderService, "executors", executors);
+        inject(senderService, "apnsSender", apnsSender);
+        inject(senderService, "gcmSender", gcmSender);
+        inject(senderService, "simplePushSender", new StubSimplePushSender());
+        inject(senderService, "mobileVariantInstanceDao", stub(MobileVariantInstanceDao.class, new TokenPages()));
+        inject(senderService, "metrics", metrics);
+        return senderService;
+    }
+
+    /**
+     * A push application with the given number of variants, of every network.
+     */
+    public PushApplication createPushApplication(int variants) {
+        final PushApplication pushApplication = new PushApplication();
+        pushApplication.setPushApplicationID(UUID.randomUUID().toString());
+
+        for (int i = 0; i < variants; i++) {
+            final iOSVariant iOSVariant = new iOSVariant();
+            iOSVariant.setVariantID(UUID.randomUUID().toString());
+            pushApplication.getIOSApps().add(iOSVariant);
+
+            final AndroidVariant androidVariant = new AndroidVariant();
+            androidVariant.setVariantID(UUID.randomUUID().toString());
+            androidVariant.setGoogleKey("benchmark-key-" + i);
+            pushApplication.getAndroidApps().add(androidVariant);
+
+            final SimplePushVariant simplePushVariant = new SimplePushVariant();
+            simplePushVariant.setVariantID(UUID.randomUUID().toString());
+            simplePushVariant.setPushNetworkURL("http://localhost/endpoint/");
+            pushApplication.getSimplePushApps().add(simplePushVariant);
+        }
+        return pushApplication;
+    }
+
+    public void shutdown() {
+        executors.shutdownExecutors();
+        gcmSender.shutdownRetryScheduler();
+    }
+
+    /**
+     * Serves the pages of <code>findDeviceTokensForVariant</code>. A page shares its tokens with all
+     * other pages, only its last token (the key of the next page) is unique.
+     */
+    private class TokenPages implements InvocationHandler {
+        private final String[] sharedTokens = new String[10000];
+
+        TokenPages() {
+            for (int i = 0; i < sharedTokens.length; i++) {
+                sharedTokens[i] = hexToken("f", i);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (! method.getName().equals("findDeviceTokensForVariant")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            final String lastToken = (String) args[2];
+            final int pageSize = (Integer) args[3];
+
+            final int page = (lastToken == null) ? 0 : Integer.parseInt(lastToken.substring(1), 16) + 1;
+            final int size = Math.max(0, Math.min(pageSize, tokensPerVariant - page * pageSize));
+            return new TokenPage(sharedTokens, hexToken("0", page), size);
+        }
+    }
+
+    private static final class TokenPage extends AbstractList<String> {
+        private final String[] sharedTokens;
+        private final String lastToken;
+        private final int size;
+
+        TokenPage(String[] sharedTokens, String lastToken, int size) {
+            this.sharedTokens = sharedTokens;
+            this.lastToken = lastToken;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            return (index == size - 1) ? lastToken : sharedTokens[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // a 64 digit hex token, like the ones of APNs:
+    private static String hexToken(String prefix, int value) {
+        final String hex = Integer.toHexString(value);
+        final StringBuilder token = new StringBuilder(64).append(prefix);
+        for (int i = prefix.length() + hex.length(); i < 64; i++) {
+            token.append('0');
+        }
+        return token.append(hex).toString();
+    }
+
+    private static class StubAPNsCache extends APNsCache {
+        private static final long serialVersionUID = 1L;
+
+        private final ApnsService service = stub(ApnsService.class, null);
+
+        @Override
+        public ApnsService getApnsServiceForVariant(iOSVariant iOSVariant) {
+            return service;
+        }
+    }
+
+    private static class StubGCMCache extends GCMCache {
+        private static final long serialVersionUID = 1L;
+
+        private final GCMTransport transport = new StubGCMTransport();
+
+        @Override
+        public GCMTransport getSenderForAPIKey(String googleAPIKey) {
+            return transport;
+        }
+    }
+
+    private static class StubGCMTransport extends GCMTransport {
+        private final ThreadLocal<Integer> registrationIDs = new ThreadLocal<Integer>();
+
+        StubGCMTransport() {
+            super("benchmark-key", "http://localhost/gcm/send", 10000, Integer.MAX_VALUE, new Semaphore(Integer.MAX_VALUE));
+        }
+
+        @Override
+        public MulticastResult sendNoRetry(Message message, List<String> registrationIds) throws IOException {
+            registrationIDs.set(registrationIds.size());
+            return super.sendNoRetry(message, registrationIds);
+        }
+
+        @Override
+        protected HttpURLConnection post(String url, String contentType, String body) throws IOException {
+            final int count = registrationIDs.get();
+            final StringBuilder response = new StringBuilder("{\"multicast_id\":1,\"success\":")
+                    .append(count).append(",\"failure\":0,\"canonical_ids\":0,\"results\":[");
+            for (int i = 0; i < count; i++) {
+                response.append(i == 0 ? "" : ",").append("{\"message_id\":\"0:").append(i).append("\"}");
+            }
+            response.append("]}");
+            return new StubConnection(new URL(url), response.toString().getBytes(UTF_8));
+        }
+    }
+
+    private static class StubConnection extends HttpURLConnection {
+        private final byte[] response;
+
+        StubConnection(URL url, byte[] response) {
+            super(url);
+            this.response = response;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(response);
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+
+    private static class StubSimplePushSender extends SimplePushNotificationSender {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void sendMessage(String endpoint, String payload, List<String> channels, DeliveryCounters counters) {
+            counters.addSent(channels.size());
+        }
+    }
+
+    // an implementation of the interface, that returns null (or does nothing), unless a handler is given:
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        final InvocationHandler invocationHandler = (handler != null) ? handler : new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return defaultValue(method.getReturnType());
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, invocationHandler));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+
+    private static Logger logger(Class<?> type) {
+        return Logger.getLogger(type.getName());
+    }
+
+    // sets the (injected) field, as CDI would:
+    private static void inject(Object target, String fieldName, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                final Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // declared by a super class
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field '" + fieldName + "' in " + target.getClass());
+    }
+}
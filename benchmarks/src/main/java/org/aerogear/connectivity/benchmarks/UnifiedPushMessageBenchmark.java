@@ -0,0 +1,93 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.aerogear.connectivity.message.sender.UnifiedPushMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.android.gcm.server.Message;
+
+/**
+ * Cost of reading a submitted message, and of building the APNs and GCM payloads from it. The
+ * payloads are built once per message (not per token or variant), the <code>cached</code>
+ * benchmarks show the cost of every further lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnifiedPushMessageBenchmark {
+
+    private Map<String, Object> submitted;
+    private UnifiedPushMessage message;
+
+    @Setup
+    public void createMessage() {
+        submitted = new HashMap<String, Object>();
+        submitted.put("alert", "Your order 4711 has been shipped");
+        submitted.put("sound", "default");
+        submitted.put("badge", 7);
+        submitted.put("simple-push", "version=123");
+        submitted.put("orderId", "4711");
+        submitted.put("carrier", "UPS");
+        submitted.put("eta", "2013-07-18");
+
+        message = new UnifiedPushMessage(submitted);
+        message.getAPNsPayload();
+        message.getGCMMessage();
+    }
+
+    @Benchmark
+    public UnifiedPushMessage construct() {
+        return new UnifiedPushMessage(submitted);
+    }
+
+    @Benchmark
+    public byte[] apnsPayload() {
+        return new UnifiedPushMessage(submitted).getAPNsPayload();
+    }
+
+    @Benchmark
+    public Message gcmMessage() {
+        return new UnifiedPushMessage(submitted).getGCMMessage();
+    }
+
+    @Benchmark
+    public byte[] cachedAPNsPayload() {
+        return message.getAPNsPayload();
+    }
+
+    @Benchmark
+    public Message cachedGCMMessage() {
+        return message.getGCMMessage();
+    }
+}
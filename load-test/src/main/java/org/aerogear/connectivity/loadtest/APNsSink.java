@@ -0,0 +1,172 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A TLS endpoint, that speaks the binary protocol of the APNs gateway: it reads the notifications
+ * (simple, enhanced and frame format) and counts them. A share of the enhanced notifications
+ * can be rejected as an invalid token (error response, then the connection is closed, as by APNs),
+ * to exercise the error handling of the server. The feedback endpoint reports no inactive devices.
+ */
+public class APNsSink {
+
+    private static final int INVALID_TOKEN = 8;
+
+    private final ServerSocket gateway;
+    private final ServerSocket feedback;
+    private final double rejectRate;
+    private final Random random = new Random();
+
+    private final ExecutorService connections = Executors.newCachedThreadPool(LoadTest.daemonThreads("apns-sink"));
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    public APNsSink(SSLContext sslContext, int gatewayPort, int feedbackPort, double rejectRate) throws IOException {
+        this.gateway = sslContext.getServerSocketFactory().createServerSocket(gatewayPort);
+        this.feedback = sslContext.getServerSocketFactory().createServerSocket(feedbackPort);
+        this.rejectRate = rejectRate;
+    }
+
+    public void start() {
+        accept(gateway, false);
+        accept(feedback, true);
+    }
+
+    public void stop() throws IOException {
+        gateway.close();
+        feedback.close();
+        connections.shutdownNow();
+    }
+
+    public long getNotifications() {
+        return notifications.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getConnections() {
+        return connectionCount.get();
+    }
+
+    private void accept(final ServerSocket serverSocket, final boolean isFeedback) {
+        connections.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (! serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        if (isFeedback) {
+                            // no inactive devices:
+                            ((SSLSocket) socket).startHandshake();
+                            socket.close();
+                        } else {
+                            connectionCount.incrementAndGet();
+                            connections.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    read(socket);
+                                }
+                            });
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }
+        });
+    }
+
+    private void read(Socket socket) {
+        final byte[] buffer = new byte[64 * 1024];
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            while (true) {
+                final int command = in.read();
+                switch (command) {
+                case 0:
+                    skip(in, buffer, in.readUnsignedShort());
+                    skip(in, buffer, in.readUnsignedShort());
+                    break;
+                case 1:
+                    final int identifier = in.readInt();
+                    in.readInt(); // expiry
+                    skip(in, buffer, in.readUnsignedShort());
+                    skip(in, buffer, in.readUnsignedShort());
+                    if (rejectRate > 0 && random.nextDouble() < rejectRate) {
+                        rejected.incrementAndGet();
+                        reject(socket.getOutputStream(), identifier);
+                        return;
+                    }
+                    break;
+                case 2:
+                    skip(in, buffer, in.readInt());
+                    break;
+                default:
+                    // end of stream, or an unknown command:
+                    return;
+                }
+                notifications.incrementAndGet();
+            }
+        } catch (EOFException e) {
+            // closed by the server
+        } catch (SocketException e) {
+            // closed by the server
+        } catch (IOException e) {
+            System.err.println("APNs sink: " + e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closed anyway
+            }
+        }
+    }
+
+    private static void reject(OutputStream out, int identifier) throws IOException {
+        out.write(new byte[] { 8, INVALID_TOKEN,
+                (byte) (identifier >>> 24), (byte) (identifier >>> 16), (byte) (identifier >>> 8), (byte) identifier });
+        out.flush();
+    }
+
+    private static void skip(DataInputStream in, byte[] buffer, int length) throws IOException {
+        while (length > 0) {
+            final int chunk = Math.min(length, buffer.length);
+            in.readFully(buffer, 0, chunk);
+            length -= chunk;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP endpoint, that answers GCM multicast requests (<code>POST /gcm/send</code>). Every
+ * registration ID gets a result of the configured mix: a success, a success with a canonical
+ * registration ID, <code>Unavailable</code> (retried by the server) or <code>NotRegistered</code>
+ * (pruned by the server). An optional latency simulates the round trip to Google.
+ */
+public class GCMStub {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Random random = new Random();
+
+    private final double unavailableRate;
+    private final double notRegisteredRate;
+    private final double canonicalRate;
+    private final long latencyMillis;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final AtomicLong notRegistered = new AtomicLong();
+    private final AtomicLong canonical = new AtomicLong();
+    private final AtomicLong multicastIDs = new AtomicLong();
+
+    public GCMStub(int port, int threads, double unavailableRate, double notRegisteredRate, double canonicalRate,
+            long latencyMillis) throws IOException {
+        this.unavailableRate = unavailableRate;
+        this.notRegisteredRate = notRegisteredRate;
+        this.canonicalRate = canonicalRate;
+        this.latencyMillis = latencyMillis;
+
+        workers = Executors.newFixedThreadPool(threads, LoadTest.daemonThreads("gcm-stub"));
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(workers);
+        server.createContext("/gcm/send", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                multicast(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Registration IDs that got a success (with or without a canonical ID).
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getUnavailable() {
+        return unavailable.get();
+    }
+
+    public long getNotRegistered() {
+        return notRegistered.get();
+    }
+
+    public long getCanonical() {
+        return canonical.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void multicast(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || ! authorization.startsWith("key=")) {
+            respond(exchange, 401, "Unauthorized");
+            return;
+        }
+
+        final Map<String, Object> request;
+        final InputStream body = exchange.getRequestBody();
+        try {
+            request = mapper.readValue(body, Map.class);
+        } finally {
+            body.close();
+        }
+        final List<String> registrationIDs = (List<String>) request.get("registration_ids");
+        if (registrationIDs == null || registrationIDs.isEmpty()) {
+            respond(exchange, 400, "Missing registration_ids");
+            return;
+        }
+
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int success = 0;
+        int failure = 0;
+        int canonicalIDs = 0;
+        final StringBuilder results = new StringBuilder();
+        for (String registrationID : registrationIDs) {
+            results.append(results.length() == 0 ? "" : ",");
+
+            final double outcome = random.nextDouble();
+            if (outcome < unavailableRate) {
+                failure++;
+                unavailable.incrementAndGet();
+                results.append("{\"error\":\"Unavailable\"}");
+            } else if (outcome < unavailableRate + notRegisteredRate) {
+                failure++;
+                notRegistered.incrementAndGet();
+                results.append("{\"error\":\"NotRegistered\"}");
+            } else if (outcome < unavailableRate + notRegisteredRate + canonicalRate) {
+                success++;
+                canonicalIDs++;
+                canonical.incrementAndGet();
+                results.append("{\"message_id\":\"0:").append(multicastIDs.incrementAndGet())
+                        .append("\",\"registration_id\":\"canonical-").append(registrationID).append("\"}");
+            } else {
+                success++;
+                results.append("{\"message_id\":\"0:").append(multicastIDs.incrementAndGet()).append("\"}");
+            }
+        }
+        delivered.addAndGet(success);
+
+        respond(exchange, 200, "{\"multicast_id\":" + multicastIDs.incrementAndGet() + ",\"success\":" + success
+                + ",\"failure\":" + failure + ",\"canonical_ids\":" + canonicalIDs + ",\"results\":[" + results + "]}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", status == 200 ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Starts the stand-ins for APNs, GCM and SimplePush, sets up a push application with variants that
+ * deliver to them, registers the devices and times broadcasts end to end: from the send request,
+ * until the stubs received every notification. The server has to be started with:
+ *
+ * <pre>
+ * -Daerogear.push.apns.gateway=localhost:2195 -Daerogear.push.gcm.endpoint=http://localhost:8091/gcm/send
+ * </pre>
+ *
+ * The test is configured with system properties, see the README. With <code>loadtest.stubs.only</code>
+ * only the stubs are started (e.g. for a manual test, or for a driver on a different machine).
+ */
+public class LoadTest {
+
+    private static final String IOS = "IOS";
+    private static final String ANDROID = "ANDROID";
+    private static final String SIMPLE_PUSH = "SIMPLE_PUSH";
+
+    private final String restURL = property("loadtest.server", "http://localhost:8080/ag-push") + "/rest";
+    private final int devices = Integer.getInteger("loadtest.devices", 10000);
+    private final int variants = Integer.getInteger("loadtest.variants", 1);
+    private final List<String> networks = Arrays.asList(property("loadtest.networks", "ios,android,simplepush").toUpperCase()
+            .replace("SIMPLEPUSH", SIMPLE_PUSH).split(","));
+    private final int broadcasts = Integer.getInteger("loadtest.broadcasts", 3);
+    private final int registrationBatch = Integer.getInteger("loadtest.registration.batch", 5000);
+    private final long timeoutMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("loadtest.timeout", 600));
+
+    private final String stubHost = property("loadtest.stubs.host", "localhost");
+    private final int apnsPort = Integer.getInteger("loadtest.apns.port", 2195);
+    private final int apnsConnections = Integer.getInteger("loadtest.apns.connections", 1);
+    private final int gcmPort = Integer.getInteger("loadtest.gcm.port", 8091);
+    private final int simplePushPort = Integer.getInteger("loadtest.simplepush.port", 8092);
+    private final String passphrase = property("loadtest.apns.passphrase", "loadtest");
+    private final File certificate = new File(property("loadtest.apns.certificate", "target/apns-stub.p12"));
+
+    private final Random random = new Random();
+
+    private APNsSink apnsSink;
+    private GCMStub gcmStub;
+    private SimplePushSink simplePushSink;
+
+    public static void main(String[] args) throws Exception {
+        final LoadTest loadTest = new LoadTest();
+        loadTest.startStubs();
+
+        if (Boolean.getBoolean("loadtest.stubs.only")) {
+            System.out.println("Stubs started, press Ctrl+C to stop");
+            Thread.currentThread().join();
+        }
+        try {
+            loadTest.run();
+        } finally {
+            loadTest.stopStubs();
+        }
+    }
+
+    private void startStubs() throws IOException, GeneralSecurityException, InterruptedException {
+        apnsSink = new APNsSink(sslContext(), apnsPort, apnsPort + 1, doubleProperty("loadtest.apns.invalid_token", 0));
+        gcmStub = new GCMStub(gcmPort, Integer.getInteger("loadtest.gcm.threads", 32),
+                doubleProperty("loadtest.gcm.unavailable", 0),
+                doubleProperty("loadtest.gcm.not_registered", 0),
+                doubleProperty("loadtest.gcm.canonical", 0),
+                Integer.getInteger("loadtest.gcm.latency", 0));
+        simplePushSink = new SimplePushSink(simplePushPort, Integer.getInteger("loadtest.simplepush.threads", 32));
+
+        apnsSink.start();
+        gcmStub.start();
+        simplePushSink.start();
+        System.out.println("APNs sink on port " + apnsPort + " (feedback " + (apnsPort + 1) + "), GCM stub on port "
+                + gcmPort + ", SimplePush sink on port " + simplePushPort);
+    }
+
+    private void stopStubs() throws IOException {
+        apnsSink.stop();
+        gcmStub.stop();
+        simplePushSink.stop();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        final PushServerClient client = new PushServerClient(restURL);
+        final String pushApplicationID = client.createPushApplication("load test " + System.currentTimeMillis());
+
+        // the variants, and their installations:
+        final Map<String, List<String>> variantIDs = new LinkedHashMap<String, List<String>>();
+        for (String network : networks) {
+            final List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < variants; i++) {
+                ids.add(createVariant(client, pushApplicationID, network, i));
+            }
+            variantIDs.put(network, ids);
+        }
+
+        final long registrationStart = System.nanoTime();
+        for (Map.Entry<String, List<String>> entry : variantIDs.entrySet()) {
+            for (String variantID : entry.getValue()) {
+                register(client, entry.getKey(), variantID);
+            }
+        }
+        final long registered = devices * (long) variants * networks.size();
+        System.out.printf("Registered %d installations in %.1f s (%.0f/s)%n", registered,
+                seconds(System.nanoTime() - registrationStart), registered / seconds(System.nanoTime() - registrationStart));
+
+        for (int i = 1; i <= broadcasts; i++) {
+            broadcast(client, pushApplicationID, i);
+        }
+
+        System.out.printf("APNs sink: %d notifications, %d rejected, %d connections%n",
+                apnsSink.getNotifications(), apnsSink.getRejected(), apnsSink.getConnections());
+        System.out.printf("GCM stub: %d requests, %d delivered, %d unavailable, %d not registered, %d canonical%n",
+                gcmStub.getRequests(), gcmStub.getDelivered(), gcmStub.getUnavailable(), gcmStub.getNotRegistered(), gcmStub.getCanonical());
+        System.out.printf("SimplePush sink: %d notifications%n", simplePushSink.getNotifications());
+    }
+
+    private String createVariant(PushServerClient client, String pushApplicationID, String network, int index) throws IOException {
+        if (IOS.equals(network)) {
+            return client.createiOSVariant(pushApplicationID, readFully(certificate), passphrase, apnsConnections);
+        } else if (ANDROID.equals(network)) {
+            return client.createAndroidVariant(pushApplicationID, "load-test-key-" + index);
+        } else if (SIMPLE_PUSH.equals(network)) {
+            return client.createSimplePushVariant(pushApplicationID, "http://" + stubHost + ":" + simplePushPort + SimplePushSink.PATH);
+        }
+        throw new IllegalArgumentException("Unknown network: " + network);
+    }
+
+    private void register(PushServerClient client, String network, String variantID) throws IOException {
+        final List<String> installations = new ArrayList<String>(registrationBatch);
+        for (int i = 0; i < devices; i++) {
+            installations.add(installation(network));
+            if (installations.size() == registrationBatch || i == devices - 1) {
+                client.register(variantID, installations);
+                installations.clear();
+            }
+        }
+    }
+
+    private String installation(String network) {
+        if (IOS.equals(network)) {
+            return "{\"deviceToken\":\"" + hexToken() + "\",\"deviceType\":\"iPhone\",\"mobileOperatingSystem\":\"iOS\"}";
+        } else if (ANDROID.equals(network)) {
+            return "{\"deviceToken\":\"APA91b" + UUID.randomUUID() + "\",\"deviceType\":\"AndroidPhone\",\"mobileOperatingSystem\":\"android\"}";
+        }
+        // only the 'broadcast' channels get a broadcast:
+        return "{\"deviceToken\":\"" + UUID.randomUUID() + "\",\"category\":\"broadcast\"}";
+    }
+
+    private String hexToken() {
+        final StringBuilder token = new StringBuilder(64);
+        for (int i = 0; i < 4; i++) {
+            final String hex = Long.toHexString(random.nextLong());
+            for (int j = hex.length(); j < 16; j++) {
+                token.append('0');
+            }
+            token.append(hex);
+        }
+        return token.toString();
+    }
+
+    /**
+     * Sends a broadcast and follows its job, until every network is done: the server handed all tokens
+     * to the network (or gave up on them), and for APNs, the sink received the notifications.
+     */
+    @SuppressWarnings("unchecked")
+    private void broadcast(PushServerClient client, String pushApplicationID, int round) throws IOException, InterruptedException {
+        final Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put("alert", "Load test " + round);
+        message.put("sound", "default");
+        message.put("badge", round);
+        message.put("simple-push", "version=" + round);
+
+        final long apnsBaseline = apnsSink.getNotifications() + apnsSink.getRejected();
+        final long start = System.nanoTime();
+        final String jobID = client.broadcast(pushApplicationID, message);
+
+        final Map<String, Long> finished = new LinkedHashMap<String, Long>();
+        Map<String, Map<String, Number>> counters = null;
+        Map<String, String> errors = null;
+        long apnsReceived = 0;
+        long apnsChanged = start;
+        while (finished.size() < networks.size() && System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+            Thread.sleep(100);
+            final Map<String, Object> job = client.job(jobID);
+            final boolean completed = Boolean.TRUE.equals(job.get("completed"));
+            counters = (Map<String, Map<String, Number>>) job.get("networks");
+            errors = (Map<String, String>) job.get("errors");
+            if (apnsSink.getNotifications() + apnsSink.getRejected() - apnsBaseline != apnsReceived) {
+                apnsReceived = apnsSink.getNotifications() + apnsSink.getRejected() - apnsBaseline;
+                apnsChanged = System.nanoTime();
+            }
+
+            for (String network : networks) {
+                final Map<String, Number> networkCounters = counters.get(network);
+                if (finished.containsKey(network) || ! completed) {
+                    continue;
+                }
+                if (networkCounters == null) {
+                    // failed as a whole:
+                    if (errors != null && errors.containsKey(network)) {
+                        finished.put(network, System.nanoTime() - start);
+                    }
+                    continue;
+                }
+                // the job is completed, once all tokens were sent or failed (including the retries):
+                boolean done = true;
+                if (IOS.equals(network)) {
+                    // after a rejected token, APNs drops the rest of the connection, so a quiet sink is done too:
+                    done = apnsReceived >= networkCounters.get("sent").longValue()
+                            || System.nanoTime() - apnsChanged > TimeUnit.SECONDS.toNanos(2);
+                }
+                if (done) {
+                    finished.put(network, System.nanoTime() - start);
+                }
+            }
+        }
+
+        System.out.println("Broadcast " + round + " (job " + jobID + "):");
+        for (String network : networks) {
+            final Map<String, Number> networkCounters = (counters == null) ? null : counters.get(network);
+            if (errors != null && errors.containsKey(network)) {
+                System.out.printf("  %-12s failed: %s%n", network, errors.get(network));
+            }
+            if (networkCounters == null) {
+                System.out.printf("  %-12s no progress%n", network);
+                continue;
+            }
+            final Long elapsed = finished.get(network);
+            final long queued = networkCounters.get("queued").longValue();
+            System.out.printf("  %-12s queued %d, sent %d, failed %d, pruned %d, %s%n", network, queued,
+                    networkCounters.get("sent").longValue(), networkCounters.get("failed").longValue(),
+                    networkCounters.get("pruned").longValue(),
+                    (elapsed == null) ? "not done after " + timeoutMillis / 1000 + " s"
+                            : String.format("%.2f s (%.0f tokens/s)", seconds(elapsed), queued / seconds(elapsed)));
+        }
+    }
+
+    /**
+     * The key of the APNs sink, and the certificate of the iOS variants: the APNs client of the server trusts
+     * the certificates of its own key store. A self-signed one is created with keytool, if the file is missing.
+     */
+    private SSLContext sslContext() throws IOException, GeneralSecurityException, InterruptedException {
+        if (! certificate.exists()) {
+            createCertificate();
+        }
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        final InputStream in = new FileInputStream(certificate);
+        try {
+            keyStore.load(in, passphrase.toCharArray());
+        } finally {
+            in.close();
+        }
+
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, passphrase.toCharArray());
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+    private void createCertificate() throws IOException, InterruptedException {
+        final File parent = certificate.getAbsoluteFile().getParentFile();
+        if (! parent.exists() && ! parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        final String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        final Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "apns-stub", "-keyalg", "RSA",
+                "-keysize", "2048", "-dname", "CN=" + stubHost, "-validity", "3650", "-storetype", "PKCS12",
+                "-keystore", certificate.getPath(), "-storepass", passphrase, "-keypass", passphrase)
+                .redirectErrorStream(true).start();
+        final byte[] output = readFully(process.getInputStream());
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + new String(output));
+        }
+        System.out.println("Created the APNs certificate " + certificate);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        return readFully(new FileInputStream(file));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String property(String key, String defaultValue) {
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static double doubleProperty(String key, double defaultValue) {
+        final String value = System.getProperty(key);
+        return (value == null) ? defaultValue : Double.parseDouble(value);
+    }
+
+    static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
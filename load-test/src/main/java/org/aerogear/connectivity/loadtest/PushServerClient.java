@@ -0,0 +1,183 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * The REST calls of the load driver: setting up a push application with its variants, the bulk
+ * registration of installations, and sending (and following) broadcasts.
+ */
+public class PushServerClient {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String restURL;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param restURL the URL of the REST API, e.g. <code>http://localhost:8080/ag-push/rest</code>
+     */
+    public PushServerClient(String restURL) {
+        this.restURL = restURL;
+    }
+
+    public String createPushApplication(String name) throws IOException {
+        final Map<String, Object> pushApplication = new HashMap<String, Object>();
+        pushApplication.put("name", name);
+        pushApplication.put("description", "load test");
+        return (String) postJSON("/applications", pushApplication).get("pushApplicationID");
+    }
+
+    public String createAndroidVariant(String pushApplicationID, String googleKey) throws IOException {
+        final Map<String, Object> variant = new HashMap<String, Object>();
+        variant.put("googleKey", googleKey);
+        return (String) postJSON("/applications/" + pushApplicationID + "/android", variant).get("variantID");
+    }
+
+    public String createSimplePushVariant(String pushApplicationID, String pushNetworkURL) throws IOException {
+        final Map<String, Object> variant = new HashMap<String, Object>();
+        variant.put("pushNetworkURL", pushNetworkURL);
+        return (String) postJSON("/applications/" + pushApplicationID + "/simplePush", variant).get("variantID");
+    }
+
+    public String createiOSVariant(String pushApplicationID, byte[] certificate, String passphrase, int connections) throws IOException {
+        final String boundary = "----loadtest" + UUID.randomUUID();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writePart(body, boundary, "passphrase", null, passphrase.getBytes(UTF_8));
+        writePart(body, boundary, "connections", null, String.valueOf(connections).getBytes(UTF_8));
+        writePart(body, boundary, "certificate", "application/octet-stream", certificate);
+        body.write(("--" + boundary + "--\r\n").getBytes(UTF_8));
+
+        final HttpURLConnection connection = open("/applications/" + pushApplicationID + "/iOS", "POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+        return (String) send(connection, body.toByteArray()).get("variantID");
+    }
+
+    /**
+     * Registers the installations (JSON objects, one per line) with one bulk request.
+     */
+    public void register(String variantID, List<String> installations) throws IOException {
+        final StringBuilder body = new StringBuilder(installations.size() * 128);
+        for (String installation : installations) {
+            body.append(installation).append('\n');
+        }
+
+        final HttpURLConnection connection = open("/registry/device/bulk", "POST");
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        connection.setRequestProperty("ag-mobile-variant", variantID);
+        sendAndDiscard(connection, body.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * Returns the ID of the job.
+     */
+    public String broadcast(String pushApplicationID, Map<String, Object> message) throws IOException {
+        return (String) postJSON("/sender/broadcast/" + pushApplicationID, message).get("id");
+    }
+
+    public Map<String, Object> job(String jobID) throws IOException {
+        final HttpURLConnection connection = open("/sender/jobs/" + jobID, "GET");
+        return read(connection);
+    }
+
+    private Map<String, Object> postJSON(String path, Object entity) throws IOException {
+        final HttpURLConnection connection = open(path, "POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        return send(connection, mapper.writeValueAsBytes(entity));
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(restURL + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        return connection;
+    }
+
+    private Map<String, Object> send(HttpURLConnection connection, byte[] body) throws IOException {
+        write(connection, body);
+        return read(connection);
+    }
+
+    private void sendAndDiscard(HttpURLConnection connection, byte[] body) throws IOException {
+        write(connection, body);
+        check(connection);
+        final InputStream in = connection.getInputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // the result of every installation
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(HttpURLConnection connection, byte[] body) throws IOException {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        final OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> read(HttpURLConnection connection) throws IOException {
+        check(connection);
+        final InputStream in = connection.getInputStream();
+        try {
+            return mapper.readValue(in, Map.class);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void check(HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        if (status < 200 || status >= 300) {
+            throw new IOException(connection.getRequestMethod() + " " + connection.getURL() + " failed with HTTP " + status);
+        }
+    }
+
+    private static void writePart(ByteArrayOutputStream body, String boundary, String name, String contentType, byte[] content)
+            throws IOException {
+        final StringBuilder headers = new StringBuilder("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append('"');
+        if (contentType != null) {
+            headers.append("; filename=\"").append(name).append("\"\r\nContent-Type: ").append(contentType);
+        }
+        headers.append("\r\n\r\n");
+        body.write(headers.toString().getBytes(UTF_8));
+        body.write(content);
+        body.write("\r\n".getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP endpoint, that accepts the SimplePush notifications (<code>PUT /endpoint/{channelID}</code>)
+ * of the server, like a SimplePush server would.
+ */
+public class SimplePushSink {
+
+    public static final String PATH = "/endpoint/";
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+
+    private final AtomicLong notifications = new AtomicLong();
+
+    public SimplePushSink(int port, int threads) throws IOException {
+        workers = Executors.newFixedThreadPool(threads, LoadTest.daemonThreads("simplepush-sink"));
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(workers);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final InputStream body = exchange.getRequestBody();
+                try {
+                    while (body.read() != -1) {
+                        // the version, e.g. 'version=123'
+                    }
+                } finally {
+                    body.close();
+                }
+
+                if ("PUT".equals(exchange.getRequestMethod())) {
+                    notifications.incrementAndGet();
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(405, -1);
+                }
+                exchange.close();
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    public long getNotifications() {
+        return notifications.get();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.cdi.interceptor;
+
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+import org.aerogear.connectivity.metrics.PushMetrics;
+
+import com.codahale.metrics.Timer;
+
+@Interceptor
+@Timed("")
+public class TimedInterceptor {
+
+    @Inject
+    private PushMetrics metrics;
+
+    @AroundInvoke
+    public Object invoke(InvocationContext ctx) throws Exception {
+
+        final Timed annotation = ctx.getMethod().getAnnotation(Timed.class);
+        if (annotation == null) {
+            return ctx.proceed();
+        }
+
+        final Timer.Context timer = metrics.timer(annotation.value()).time();
+        try {
+            return ctx.proceed();
+        } finally {
+            timer.stop();
+        }
+    }
+}
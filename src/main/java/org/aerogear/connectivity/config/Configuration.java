@@ -0,0 +1,37 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.config;
+
+/**
+ * Access to the tuning settings of the server. All values have defaults, and can be
+ * overridden with system properties (e.g. in the <code>system-properties</code> section
+ * of the JBoss AS configuration), like <code>aerogear.push.android.threads=16</code>.
+ */
+public final class Configuration {
+
+    private Configuration() {
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return Integer.getInteger(key, defaultValue);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return System.getProperty(key, defaultValue);
+    }
+}
@@ -47,10 +47,35 @@ public class AbstractGenericDao<E, K> implements GenericDao<E, K> {
         entityManager.remove(e);
     }
 
+    public void flush() {
+        entityManager.joinTransaction();
+        entityManager.flush();
+    }
+
+    /**
+     * Detaches all entities: the persistence context is extended, it is not cleared by a commit.
+     */
+    public void clear() {
+        entityManager.clear();
+    }
+
+    public void detach(E e) {
+        entityManager.detach(e);
+    }
+
     // ---------------------- (generic) finder methods ----------------------
     public Query createQuery(String jpql) {
         return entityManager.createQuery(jpql);
     }
+
+    /**
+     * For the (read-mostly) lookups: the result is kept in the Hibernate query cache, and is
+     * invalidated whenever one of the queried tables is written.
+     */
+    public Query createCacheableQuery(String jpql) {
+        return entityManager.createQuery(jpql)
+                .setHint("org.hibernate.cacheable", Boolean.TRUE);
+    }
     
     @SuppressWarnings("unchecked")
     public E find(Class<?> classType, K id) {
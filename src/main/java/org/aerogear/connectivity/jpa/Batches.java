@@ -0,0 +1,41 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.jpa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Splits (potentially large) collections of query parameters, so that the IN-lists
+ * of the queries have a bounded size.
+ */
+public final class Batches {
+
+    private Batches() {
+    }
+
+    public static <T> List<List<T>> of(Collection<T> values, int batchSize) {
+        final List<T> allValues = new ArrayList<T>(values);
+        final List<List<T>> batches = new ArrayList<List<T>>();
+        for (int i = 0; i < allValues.size(); i += batchSize) {
+            batches.add(allValues.subList(i, Math.min(i + batchSize, allValues.size())));
+        }
+        return batches;
+    }
+}
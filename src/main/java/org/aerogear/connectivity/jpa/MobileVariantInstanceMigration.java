@@ -0,0 +1,102 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.jpa;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+/**
+ * Upgrades installations that were registered before they owned the link to their variant: up to then,
+ * the link was kept in a join table (<code>AbstractMobileVariant_MobileVariantInstanceImpl</code>). On
+ * start, the <code>mobileVariant_id</code> column of those installations is filled from the join table,
+ * and the join table is emptied, so that its foreign keys no longer block removing installations.
+ * The (empty) join table can be dropped afterwards, see the README.
+ */
+@Singleton
+@Startup
+public class MobileVariantInstanceMigration {
+
+    private static final String JOIN_TABLE = "AbstractMobileVariant_MobileVariantInstanceImpl";
+
+    @Inject private Logger logger;
+
+    @Resource(mappedName = "java:jboss/datasources/PushEEDS")
+    private DataSource dataSource;
+
+    @PostConstruct
+    public void migrate() {
+        try {
+            final Connection connection = dataSource.getConnection();
+            try {
+                if (tableExists(connection, JOIN_TABLE)) {
+                    migrate(connection);
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            // e.g. a device token that is registered twice for a variant (unique constraint):
+            logger.severe("Could not link the installations of " + JOIN_TABLE + " to their variants: " + e.getMessage());
+        }
+    }
+
+    private void migrate(Connection connection) throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            // a correlated subquery: UPDATE ... FROM is not supported by all databases
+            final int linked = statement.executeUpdate("update MobileVariantInstanceImpl set mobileVariant_id ="
+                    + " (select j.AbstractMobileVariant_id from " + JOIN_TABLE + " j where j.instances_id = MobileVariantInstanceImpl.id)"
+                    + " where mobileVariant_id is null");
+            final int removed = statement.executeUpdate("delete from " + JOIN_TABLE);
+
+            if (linked > 0 || removed > 0) {
+                logger.info("Linked " + linked + " installations to their variants, removed " + removed + " rows of " + JOIN_TABLE);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    // the database may store the names in upper or lower case:
+    private boolean tableExists(Connection connection, String table) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[] { table, table.toUpperCase(Locale.ENGLISH), table.toLowerCase(Locale.ENGLISH) }) {
+            final ResultSet tables = metaData.getTables(null, null, name, null);
+            try {
+                if (tables.next()) {
+                    return true;
+                }
+            } finally {
+                tables.close();
+            }
+        }
+        return false;
+    }
+}
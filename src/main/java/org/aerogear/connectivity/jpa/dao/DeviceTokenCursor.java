@@ -0,0 +1,82 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.jpa.dao;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks over the device tokens of one variant, page by page. Each call to {@link #next()}
+ * returns a chunk of (at most) <code>pageSize</code> tokens, so the memory used while
+ * sending stays the same, regardless of the number of installations of the variant.
+ */
+public class DeviceTokenCursor implements Iterator<List<String>> {
+
+    // matches the max. number of registration IDs of one GCM multicast request
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final MobileVariantInstanceDao dao;
+    private final String variantID;
+    private final String category;
+    private final int pageSize;
+
+    private List<String> nextPage;
+    private String lastToken;
+    private boolean exhausted;
+
+    public DeviceTokenCursor(MobileVariantInstanceDao dao, String variantID, String category, int pageSize) {
+        this.dao = dao;
+        this.variantID = variantID;
+        this.category = category;
+        this.pageSize = pageSize;
+    }
+
+    public DeviceTokenCursor(MobileVariantInstanceDao dao, String variantID) {
+        this(dao, variantID, null, DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !exhausted) {
+            nextPage = dao.findDeviceTokensForVariant(variantID, category, lastToken, pageSize);
+
+            // a short page is the last one:
+            if (nextPage.size() < pageSize) {
+                exhausted = true;
+            }
+        }
+        return nextPage != null && !nextPage.isEmpty();
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final List<String> page = nextPage;
+        lastToken = page.get(page.size() - 1);
+        nextPage = null;
+
+        return page;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
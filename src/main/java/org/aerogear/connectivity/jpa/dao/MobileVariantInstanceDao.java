@@ -17,6 +17,7 @@
 
 package org.aerogear.connectivity.jpa.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.aerogear.connectivity.jpa.GenericDao;
@@ -26,4 +27,41 @@ public interface MobileVariantInstanceDao extends GenericDao<MobileVariantInstan
     
     List<MobileVariantInstanceImpl> findByToken(String token);
 
+    /**
+     * Returns the installation of the given variant that has the device token, or <code>null</code>.
+     */
+    MobileVariantInstanceImpl findByVariantIDAndDeviceToken(String variantID, String deviceToken);
+
+    List<MobileVariantInstanceImpl> findByVariantIDAndDeviceTokens(String variantID, Collection<String> deviceTokens);
+
+    /**
+     * Returns (at most <code>maxResults</code>) distinct device tokens of the given variant, ordered by
+     * token and starting after <code>lastToken</code>. Only the token column is loaded, no entities.
+     * The <code>category</code> is optional, if not <code>null</code> only matching instances are returned.
+     */
+    List<String> findDeviceTokensForVariant(String variantID, String category, String lastToken, int maxResults);
+
+    /**
+     * Returns the distinct device tokens of the variant, whose alias is one of the given aliases (or
+     * that have no alias, if <code>aliases</code> is <code>null</code>). The <code>category</code> is optional.
+     */
+    List<String> findDeviceTokensForVariantByAliases(String variantID, String category, Collection<String> aliases);
+
+    /**
+     * Deletes the installations of the variant with the given device tokens, with one DELETE statement.
+     * If the <code>variantID</code> is <code>null</code>, the tokens are deleted for all variants.
+     * Returns the number of deleted installations.
+     */
+    int deleteByVariantIDAndDeviceTokens(String variantID, Collection<String> deviceTokens);
+
+    /**
+     * Deletes all installations of the variant, with one DELETE statement.
+     */
+    int deleteByVariantID(String variantID);
+
+    /**
+     * Deletes the installations with the given IDs, with one DELETE statement.
+     */
+    int deleteByIDs(Collection<String> ids);
+
 }
@@ -26,5 +26,6 @@ public interface PushApplicationDao extends GenericDao<PushApplication, String>
     
     List<PushApplication> findAll();
     PushApplication findByPushApplicationID(String pushApplicationID);
+    PushApplication findByPushApplicationIDWithVariants(String pushApplicationID);
 
 }
@@ -26,7 +26,7 @@ public class MobileVariantDaoImpl extends AbstractGenericDao<MobileVariant, Stri
 
     @Override
     public MobileVariant findByVariantID(String variantID) {
-        return getSingleResultForQuery(createQuery("select t from "+AbstractMobileVariant.class.getSimpleName()+" t where t.variantID = :variantID")
+        return getSingleResultForQuery(createCacheableQuery("select t from "+AbstractMobileVariant.class.getSimpleName()+" t where t.variantID = :variantID")
         .setParameter("variantID", variantID));
     }
 
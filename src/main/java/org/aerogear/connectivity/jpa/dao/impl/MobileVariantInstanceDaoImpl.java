@@ -17,10 +17,14 @@
 
 package org.aerogear.connectivity.jpa.dao.impl;
 
+import java.util.Collection;
 import java.util.List;
 
+import javax.persistence.Query;
+
 import org.aerogear.connectivity.jpa.AbstractGenericDao;
 import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.model.AbstractMobileVariant;
 import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
 
 public class MobileVariantInstanceDaoImpl extends AbstractGenericDao<MobileVariantInstanceImpl, String> implements MobileVariantInstanceDao {
@@ -35,4 +39,123 @@ public class MobileVariantInstanceDaoImpl extends AbstractGenericDao<MobileVaria
         .getResultList();
     }
 
+    @Override
+    public MobileVariantInstanceImpl findByVariantIDAndDeviceToken(String variantID, String deviceToken) {
+
+        return getSingleResultForQuery(createQuery(
+                "select instance from " + AbstractMobileVariant.class.getSimpleName() + " variant join variant.instances instance"
+                + " where variant.variantID = :variantID and instance.deviceToken = :deviceToken")
+        .setParameter("variantID", variantID)
+        .setParameter("deviceToken", deviceToken)
+        .setMaxResults(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<MobileVariantInstanceImpl> findByVariantIDAndDeviceTokens(String variantID, Collection<String> deviceTokens) {
+
+        return createQuery(
+                "select instance from " + AbstractMobileVariant.class.getSimpleName() + " variant join variant.instances instance"
+                + " where variant.variantID = :variantID and instance.deviceToken in (:deviceTokens)")
+        .setParameter("variantID", variantID)
+        .setParameter("deviceTokens", deviceTokens)
+        .getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<String> findDeviceTokensForVariant(String variantID, String category, String lastToken, int maxResults) {
+
+        final StringBuilder jpql = new StringBuilder("select distinct instance.deviceToken from ")
+            .append(AbstractMobileVariant.class.getSimpleName())
+            .append(" variant join variant.instances instance where variant.variantID = :variantID")
+            .append(" and instance.deviceToken > :lastToken");
+
+        if (category != null) {
+            jpql.append(" and lower(instance.category) = :category");
+        }
+        jpql.append(" order by instance.deviceToken");
+
+        final Query query = createQuery(jpql.toString())
+                .setParameter("variantID", variantID)
+                .setParameter("lastToken", (lastToken == null) ? "" : lastToken)
+                .setMaxResults(maxResults);
+
+        if (category != null) {
+            query.setParameter("category", category.toLowerCase());
+        }
+
+        return query.getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<String> findDeviceTokensForVariantByAliases(String variantID, String category, Collection<String> aliases) {
+
+        final StringBuilder jpql = new StringBuilder("select distinct instance.deviceToken from ")
+            .append(AbstractMobileVariant.class.getSimpleName())
+            .append(" variant join variant.instances instance where variant.variantID = :variantID");
+
+        if (aliases == null) {
+            jpql.append(" and instance.alias is null");
+        } else {
+            jpql.append(" and instance.alias in (:aliases)");
+        }
+        if (category != null) {
+            jpql.append(" and instance.category = :category");
+        }
+
+        final Query query = createQuery(jpql.toString())
+                .setParameter("variantID", variantID);
+
+        if (aliases != null) {
+            query.setParameter("aliases", aliases);
+        }
+        if (category != null) {
+            query.setParameter("category", category);
+        }
+
+        return query.getResultList();
+    }
+
+    // ---------------------- bulk deletes: bypass the persistence context ----------------------
+    @Override
+    public int deleteByVariantIDAndDeviceTokens(String variantID, Collection<String> deviceTokens) {
+        entityManager.joinTransaction();
+
+        if (variantID == null) {
+            return createQuery("delete from " + MobileVariantInstanceImpl.class.getSimpleName() + " instance"
+                    + " where instance.deviceToken in (:deviceTokens)")
+            .setParameter("deviceTokens", deviceTokens)
+            .executeUpdate();
+        }
+
+        // no joins in bulk statements, the variant is matched with a subquery:
+        return createQuery("delete from " + MobileVariantInstanceImpl.class.getSimpleName() + " instance"
+                + " where instance.deviceToken in (:deviceTokens) and instance.mobileVariant.id in"
+                + " (select variant.id from " + AbstractMobileVariant.class.getSimpleName() + " variant where variant.variantID = :variantID)")
+        .setParameter("deviceTokens", deviceTokens)
+        .setParameter("variantID", variantID)
+        .executeUpdate();
+    }
+
+    @Override
+    public int deleteByVariantID(String variantID) {
+        entityManager.joinTransaction();
+
+        return createQuery("delete from " + MobileVariantInstanceImpl.class.getSimpleName() + " instance"
+                + " where instance.mobileVariant.id in"
+                + " (select variant.id from " + AbstractMobileVariant.class.getSimpleName() + " variant where variant.variantID = :variantID)")
+        .setParameter("variantID", variantID)
+        .executeUpdate();
+    }
+
+    @Override
+    public int deleteByIDs(Collection<String> ids) {
+        entityManager.joinTransaction();
+
+        return createQuery("delete from " + MobileVariantInstanceImpl.class.getSimpleName() + " instance where instance.id in (:ids)")
+        .setParameter("ids", ids)
+        .executeUpdate();
+    }
 }
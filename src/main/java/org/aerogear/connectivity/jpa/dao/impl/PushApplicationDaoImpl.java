@@ -19,23 +19,57 @@ package org.aerogear.connectivity.jpa.dao.impl;
 
 import java.util.List;
 
+import javax.persistence.Query;
+
 import org.aerogear.connectivity.jpa.AbstractGenericDao;
 import org.aerogear.connectivity.jpa.dao.PushApplicationDao;
 import org.aerogear.connectivity.model.PushApplication;
 
 public class PushApplicationDaoImpl extends AbstractGenericDao<PushApplication, String> implements PushApplicationDao {
 
-    @SuppressWarnings("unchecked")
     @Override
     public List<PushApplication> findAll() {
-        return createQuery("select t from "+PushApplication.class.getSimpleName()+" t").getResultList();
+        // serialized with their variants, by the console:
+        return findWithVariants(null);
     }
 
     @Override
     public PushApplication findByPushApplicationID(String pushApplicationID) {
         
-        return getSingleResultForQuery(createQuery("select pa from "+PushApplication.class.getSimpleName()+" pa where pa.pushApplicationID = :pushApplicationID")
+        return getSingleResultForQuery(createCacheableQuery("select pa from "+PushApplication.class.getSimpleName()+" pa where pa.pushApplicationID = :pushApplicationID")
         .setParameter("pushApplicationID", pushApplicationID));
     }
-    
+
+    @Override
+    public PushApplication findByPushApplicationIDWithVariants(String pushApplicationID) {
+        final List<PushApplication> result = findWithVariants(pushApplicationID);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Fetch plan for the variants (but not their instances) of one, or of all (<code>null</code>) applications.
+     * One query per variant collection: fetching all three in one query returns their cartesian product. The
+     * later queries initialize the collections of the (already managed) applications of the first one.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PushApplication> findWithVariants(String pushApplicationID) {
+        List<PushApplication> result = null;
+        for (String variants : new String[] { "iOSApps", "androidApps", "simplePushApps" }) {
+            final Query query = createQuery("select distinct pa from "+PushApplication.class.getSimpleName()+" pa"
+                    + " left join fetch pa." + variants
+                    + (pushApplicationID == null ? "" : " where pa.pushApplicationID = :pushApplicationID"));
+            if (pushApplicationID != null) {
+                query.setParameter("pushApplicationID", pushApplicationID);
+            }
+
+            final List<PushApplication> applications = query.getResultList();
+            if (result == null) {
+                result = applications;
+            }
+            if (applications.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
 }
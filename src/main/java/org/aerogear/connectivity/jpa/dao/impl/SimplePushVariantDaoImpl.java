@@ -33,7 +33,7 @@ public class SimplePushVariantDaoImpl extends AbstractGenericDao<SimplePushVaria
 
     @Override
     public SimplePushVariant findByVariantID(String variantID) {
-        return getSingleResultForQuery(createQuery("select t from "+SimplePushVariant.class.getSimpleName()+" t where t.variantID = :variantID")
+        return getSingleResultForQuery(createCacheableQuery("select t from "+SimplePushVariant.class.getSimpleName()+" t where t.variantID = :variantID")
         .setParameter("variantID", variantID));
     }
 
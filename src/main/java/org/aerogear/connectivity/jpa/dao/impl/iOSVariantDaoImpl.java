@@ -33,7 +33,7 @@ public class iOSVariantDaoImpl extends AbstractGenericDao<iOSVariant, String> im
 
     @Override
     public iOSVariant findByVariantID(String variantID) {
-        return getSingleResultForQuery(createQuery("select t from "+iOSVariant.class.getSimpleName()+" t where t.variantID = :variantID")
+        return getSingleResultForQuery(createCacheableQuery("select t from "+iOSVariant.class.getSimpleName()+" t where t.variantID = :variantID")
                 .setParameter("variantID", variantID));
     }
 
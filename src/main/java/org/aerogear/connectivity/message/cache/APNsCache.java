@@ -14,45 +14,302 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.aerogear.connectivity.message.cache;
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.message.util.DaemonThreadFactory;
+import org.aerogear.connectivity.metrics.PushMetrics;
 import org.aerogear.connectivity.model.iOSVariant;
 
+import com.codahale.metrics.Gauge;
 import com.notnoop.apns.APNS;
 import com.notnoop.apns.ApnsService;
+import com.notnoop.apns.ApnsServiceBuilder;
+import com.notnoop.apns.ReconnectPolicy;
+import com.notnoop.apns.internal.Utilities;
 
+/**
+ * One {@link ApnsService} per iOS variant. The lookup does not lock: the entries are keyed by
+ * variantID and carry a fingerprint of the credentials (certificate and passphrase) and of the
+ * connection settings of the variant. When these change, the entry is replaced atomically and the
+ * old service is stopped after a grace period. Services that were not used for
+ * <code>aerogear.push.apns.max_idle</code> minutes are evicted (and stopped) as well.
+ */
 @ApplicationScoped
 public class APNsCache implements Serializable{
     private static final long serialVersionUID = -1913999384798892563L;
 
-    private final ConcurrentHashMap<String, ApnsService> apnsCache = new ConcurrentHashMap<String, ApnsService>();
-    
+    private static final long MAX_IDLE_MILLIS = Configuration.getInt("aerogear.push.apns.max_idle", 30) * 60 * 1000L;
+    private static final long STOP_DELAY_MILLIS = Configuration.getInt("aerogear.push.apns.stop_delay", 60) * 1000L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // "host:port" of a local APNs stand-in (e.g. for a load test), instead of the Apple gateways:
+    private static final String GATEWAY = Configuration.getString("aerogear.push.apns.gateway", null);
+    private static final String FEEDBACK = Configuration.getString("aerogear.push.apns.feedback", null);
+
+    @Inject private transient Logger logger;
+    @Inject private transient PushMetrics metrics;
+
+    private final ConcurrentHashMap<String, CachedService> apnsCache = new ConcurrentHashMap<String, CachedService>();
+    private transient ScheduledExecutorService evictor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void scheduleEviction() {
+        metrics.gauge(PushMetrics.hitRatio(hits, misses), "cache", "apns", "hit_ratio");
+        metrics.gauge(new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return apnsCache.size();
+            }
+        }, "cache", "apns", "size");
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("apns-evictor"));
+        final long period = Math.max(MAX_IDLE_MILLIS / 4, 1000L);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleServices();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopServices() {
+        // the retired services are stopped right away:
+        for (Runnable pendingStop : evictor.shutdownNow()) {
+            pendingStop.run();
+        }
+        for (String variantID : apnsCache.keySet()) {
+            evict(variantID);
+        }
+    }
+
     public ApnsService getApnsServiceForVariant(iOSVariant iOSVariant) {
-        ApnsService variantService = null;
-        synchronized (apnsCache) {
-           String variantId = iOSVariant.getId();
-           variantService = apnsCache.get(variantId);
-
-           if (variantService == null) {
-               variantService = APNS
-                       .newService()
-                       .withCert(
-                               new ByteArrayInputStream(iOSVariant.getCertificate()),
-                               iOSVariant.getPassphrase()).withSandboxDestination()
-                               .asQueued().build();
-           
-           
-               // store it:
-               apnsCache.put(variantId, variantService);
-           }
-        }
-
-        return variantService;
+        final String variantID = iOSVariant.getVariantID();
+        // only computed for a variant instance that was not seen before, see CachedService.iOSVariant:
+        String fingerprint = null;
+
+        // a miss opens new connections:
+        boolean hit = true;
+        while (true) {
+            CachedService cached = apnsCache.get(variantID);
+            if (cached == null) {
+                if (fingerprint == null) {
+                    fingerprint = fingerprint(iOSVariant);
+                }
+                final CachedService created = new CachedService(fingerprint, iOSVariant);
+                if (apnsCache.putIfAbsent(variantID, created) != null) {
+                    continue;
+                }
+                cached = created;
+                hit = false;
+            } else if (cached.iOSVariant != iOSVariant) {
+                if (fingerprint == null) {
+                    fingerprint = fingerprint(iOSVariant);
+                }
+                if (cached.fingerprint.equals(fingerprint)) {
+                    // reloaded, but unchanged:
+                    cached.iOSVariant = iOSVariant;
+                } else {
+                    // the credentials were rotated:
+                    final CachedService created = new CachedService(fingerprint, iOSVariant);
+                    if (! apnsCache.replace(variantID, cached, created)) {
+                        continue;
+                    }
+                    retire(cached);
+                    cached = created;
+                    hit = false;
+                }
+            }
+
+            final ApnsService service = cached.getService();
+            if (service != null) {
+                (hit ? hits : misses).incrementAndGet();
+                return service;
+            }
+            // stopped in the meantime (evicted), look up again:
+            apnsCache.remove(variantID, cached);
+        }
+    }
+
+    /**
+     * Removes the service of the variant, e.g. when the variant was deleted or updated, and stops it
+     * after a grace period.
+     */
+    public void evict(String variantID) {
+        final CachedService cached = apnsCache.remove(variantID);
+        if (cached != null) {
+            retire(cached);
+        }
+    }
+
+    /**
+     * Reads the APNs feedback of the variant: the inactive device tokens, and when they were reported.
+     * Uses the cached service of the variant, or a temporary one for a variant that did not send
+     * lately (the feedback service has a connection of its own, the gateway is not connected).
+     */
+    public Map<String, Date> getInactiveDevices(iOSVariant iOSVariant) {
+        final CachedService cached = apnsCache.get(iOSVariant.getVariantID());
+        final ApnsService service = (cached == null) ? null : cached.service;
+        if (service != null) {
+            return service.getInactiveDevices();
+        }
+
+        final ApnsService temporaryService = buildService(iOSVariant);
+        try {
+            return temporaryService.getInactiveDevices();
+        } finally {
+            temporaryService.stop();
+        }
+    }
+
+    private void evictIdleServices() {
+        final long now = System.currentTimeMillis();
+        for (Entry<String, CachedService> entry : apnsCache.entrySet()) {
+            final CachedService cached = entry.getValue();
+            if (now - cached.lastUsed > MAX_IDLE_MILLIS && apnsCache.remove(entry.getKey(), cached)) {
+                logger.info("Stopping idle APNs service of variant " + entry.getKey());
+                retire(cached);
+            }
+        }
+    }
+
+    /**
+     * Stops a replaced or evicted service after <code>aerogear.push.apns.stop_delay</code> seconds: until
+     * then, senders that looked it up before can still push, and its queue is sent to APNs.
+     */
+    private void retire(final CachedService cached) {
+        try {
+            evictor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    cached.stop();
+                }
+            }, STOP_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down:
+            cached.stop();
+        }
+    }
+
+    /**
+     * Sandbox or production gateway (or the configured one), and one queued connection, or a pool of
+     * <code>connections</code> for high volume variants.
+     */
+    private static ApnsService buildService(iOSVariant iOSVariant) {
+        final ApnsServiceBuilder builder = APNS
+                .newService()
+                .withCert(new ByteArrayInputStream(iOSVariant.getCertificate()), iOSVariant.getPassphrase());
+
+        if (GATEWAY != null) {
+            // the feedback service defaults to the port after the gateway, as for Apple (2195, 2196):
+            final int gatewayPort = port(GATEWAY);
+            builder.withGatewayDestination(host(GATEWAY), gatewayPort);
+            builder.withFeedbackDestination(host(FEEDBACK != null ? FEEDBACK : GATEWAY),
+                    FEEDBACK != null ? port(FEEDBACK) : gatewayPort + 1);
+        } else if (Boolean.TRUE.equals(iOSVariant.getProduction())) {
+            builder.withProductionDestination();
+        } else {
+            builder.withSandboxDestination();
+        }
+        if (iOSVariant.getReconnectPolicy() != null) {
+            builder.withReconnectPolicy(ReconnectPolicy.Provided.valueOf(iOSVariant.getReconnectPolicy()));
+        }
+        if (iOSVariant.getConnections() != null && iOSVariant.getConnections() > 1) {
+            builder.asPool(iOSVariant.getConnections());
+        }
+
+        return builder.asQueued().build();
+    }
+
+    private static String host(String hostAndPort) {
+        return hostAndPort.substring(0, hostAndPort.lastIndexOf(':'));
+    }
+
+    private static int port(String hostAndPort) {
+        return Integer.parseInt(hostAndPort.substring(hostAndPort.lastIndexOf(':') + 1));
+    }
+
+    private static String fingerprint(iOSVariant iOSVariant) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(iOSVariant.getCertificate());
+            // the connection settings, since a change requires a new service as well:
+            final String settings = iOSVariant.getPassphrase() + "|" + iOSVariant.getProduction()
+                    + "|" + iOSVariant.getConnections() + "|" + iOSVariant.getReconnectPolicy();
+            digest.update(settings.getBytes(UTF_8));
+            return Utilities.encodeHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The service is built on first use, so that racing lookups do not open connections twice.
+     * Once stopped, no service is returned anymore.
+     */
+    private static final class CachedService {
+        private final String fingerprint;
+        // the last looked up instance with that fingerprint: the (detached, unmodified) variants of the
+        // metadata cache are the same instance, until they are reloaded:
+        private volatile iOSVariant iOSVariant;
+        private volatile ApnsService service;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean stopped;
+
+        CachedService(String fingerprint, iOSVariant iOSVariant) {
+            this.fingerprint = fingerprint;
+            this.iOSVariant = iOSVariant;
+        }
+
+        ApnsService getService() {
+            lastUsed = System.currentTimeMillis();
+            ApnsService result = service;
+            if (result == null) {
+                synchronized (this) {
+                    result = service;
+                    if (result == null) {
+                        if (stopped) {
+                            return null;
+                        }
+                        result = buildService(iOSVariant);
+                        service = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (service != null) {
+                service.stop();
+            }
+        }
     }
 }
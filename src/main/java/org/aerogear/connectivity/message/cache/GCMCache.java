@@ -18,28 +18,109 @@
 package org.aerogear.connectivity.message.cache;
 
 import java.io.Serializable;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
-import com.google.android.gcm.server.Sender;
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.message.util.DaemonThreadFactory;
+import org.aerogear.connectivity.metrics.PushMetrics;
 
+import com.codahale.metrics.Gauge;
+import com.google.android.gcm.server.Constants;
+
+/**
+ * One {@link GCMTransport} per API key. The transports share a limit of concurrent connections
+ * (<code>aerogear.push.gcm.connections</code>), and each key has its own limit
+ * (<code>aerogear.push.gcm.connections_per_key</code>). The connections are kept alive by the
+ * JDK's HTTP keep-alive cache (see <code>http.maxConnections</code>). Transports of API keys
+ * that did not send for <code>aerogear.push.gcm.max_idle</code> minutes are evicted.
+ */
 @ApplicationScoped
 public class GCMCache implements Serializable{
 
     private static final long serialVersionUID = 8171485458336202582L;
 
-    private final ConcurrentHashMap<String, Sender> cache = new ConcurrentHashMap<String, Sender>();
+    private static final String ENDPOINT = Configuration.getString("aerogear.push.gcm.endpoint", Constants.GCM_SEND_ENDPOINT);
+    private static final int TIMEOUT_MILLIS = Configuration.getInt("aerogear.push.gcm.timeout", 10000);
+    private static final int MAX_CONNECTIONS = Configuration.getInt("aerogear.push.gcm.connections", 50);
+    private static final int MAX_CONNECTIONS_PER_KEY = Configuration.getInt("aerogear.push.gcm.connections_per_key", 10);
+    private static final long MAX_IDLE_MILLIS = Configuration.getInt("aerogear.push.gcm.max_idle", 30) * 60 * 1000L;
+
+    private final ConcurrentHashMap<String, GCMTransport> cache = new ConcurrentHashMap<String, GCMTransport>();
+    private final Semaphore globalPermits = new Semaphore(MAX_CONNECTIONS);
+    private transient ScheduledExecutorService evictor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject private transient PushMetrics metrics;
+
+    @PostConstruct
+    public void scheduleEviction() {
+        metrics.gauge(PushMetrics.hitRatio(hits, misses), "cache", "gcm", "hit_ratio");
+        metrics.gauge(new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return cache.size();
+            }
+        }, "cache", "gcm", "size");
+        // the GCM requests in flight, across all API keys:
+        metrics.gauge(new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return MAX_CONNECTIONS - globalPermits.availablePermits();
+            }
+        }, "sender", "android", "connections");
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("gcm-evictor"));
+        final long period = Math.max(MAX_IDLE_MILLIS / 4, 1000L);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleTransports();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopEviction() {
+        evictor.shutdownNow();
+    }
     
-    public Sender getSenderForAPIKey(String googleAPIKey) {
-        Sender sender = cache.get(googleAPIKey);
+    public GCMTransport getSenderForAPIKey(String googleAPIKey) {
+        GCMTransport sender = cache.get(googleAPIKey);
         
         if (sender == null) {
+            misses.incrementAndGet();
             // create and cache:
-            sender = new Sender(googleAPIKey);
-            cache.put(googleAPIKey, sender);
+            final GCMTransport created = new GCMTransport(googleAPIKey, ENDPOINT, TIMEOUT_MILLIS, MAX_CONNECTIONS_PER_KEY, globalPermits);
+            sender = cache.putIfAbsent(googleAPIKey, created);
+            if (sender == null) {
+                sender = created;
+            }
+        } else {
+            hits.incrementAndGet();
         }
 
         return sender;
     }
+
+    private void evictIdleTransports() {
+        final long idleSince = System.currentTimeMillis() - MAX_IDLE_MILLIS;
+        for (Entry<String, GCMTransport> entry : cache.entrySet()) {
+            if (entry.getValue().isIdleSince(idleSince)) {
+                cache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
 }
@@ -0,0 +1,122 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import com.google.android.gcm.server.Message;
+import com.google.android.gcm.server.MulticastResult;
+import com.google.android.gcm.server.Sender;
+
+/**
+ * GCM {@link Sender} of one API key, that
+ * <ul>
+ *   <li>limits the concurrent requests, for the key and across all keys (a permit is held until the
+ *       response was read, which returns the persistent connection to the keep-alive pool),</li>
+ *   <li>posts to a configurable endpoint, with connect and read timeouts,</li>
+ *   <li>remembers the <code>Retry-After</code> header of the last response, for the calling
+ *       thread, so that retries can honour it.</li>
+ * </ul>
+ */
+public class GCMTransport extends Sender {
+
+    private final String endpoint;
+    private final int timeoutMillis;
+    private final Semaphore keyPermits;
+    private final int maxConnectionsPerKey;
+    private final Semaphore globalPermits;
+
+    private final ThreadLocal<Long> retryAfterMillis = new ThreadLocal<Long>();
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    public GCMTransport(String key, String endpoint, int timeoutMillis, int maxConnectionsPerKey, Semaphore globalPermits) {
+        super(key);
+        this.endpoint = endpoint;
+        this.timeoutMillis = timeoutMillis;
+        this.maxConnectionsPerKey = maxConnectionsPerKey;
+        this.keyPermits = new Semaphore(maxConnectionsPerKey);
+        this.globalPermits = globalPermits;
+    }
+
+    @Override
+    public MulticastResult sendNoRetry(Message message, List<String> registrationIds) throws IOException {
+        // also when the request fails before its response is read, the header of an earlier one does not apply:
+        retryAfterMillis.remove();
+        lastUsed = System.currentTimeMillis();
+        try {
+            keyPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a GCM connection");
+        }
+        try {
+            globalPermits.acquire();
+            try {
+                return super.sendNoRetry(message, registrationIds);
+            } finally {
+                globalPermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a GCM connection");
+        } finally {
+            keyPermits.release();
+        }
+    }
+
+    @Override
+    protected HttpURLConnection post(String url, String contentType, String body) throws IOException {
+        final HttpURLConnection connection = super.post(endpoint, contentType, body);
+        final String retryAfter = connection.getHeaderField("Retry-After");
+        if (retryAfter != null) {
+            try {
+                retryAfterMillis.set(Long.parseLong(retryAfter.trim()) * 1000L);
+            } catch (NumberFormatException e) {
+                // an HTTP date: the regular backoff applies
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    protected HttpURLConnection getConnection(String url) throws IOException {
+        final HttpURLConnection connection = super.getConnection(url);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        return connection;
+    }
+
+    /**
+     * The <code>Retry-After</code> of the last request of this thread (in milliseconds), or 0.
+     */
+    public long getRetryAfterMillis() {
+        final Long millis = retryAfterMillis.get();
+        return (millis == null) ? 0 : millis;
+    }
+
+    /**
+     * Idle: no request in flight, and none since the given time.
+     */
+    boolean isIdleSince(long time) {
+        return lastUsed < time && keyPermits.availablePermits() == maxConnectionsPerKey;
+    }
+}
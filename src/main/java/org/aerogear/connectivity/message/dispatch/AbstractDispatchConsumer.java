@@ -0,0 +1,89 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.dispatch;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.ObjectMessage;
+
+import org.aerogear.connectivity.message.job.PushJob;
+import org.aerogear.connectivity.message.job.PushJobRegistry;
+import org.aerogear.connectivity.model.PushApplication;
+import org.aerogear.connectivity.rest.sender.messages.BroadcastMessage;
+import org.aerogear.connectivity.rest.sender.messages.SelectiveSendMessage;
+import org.aerogear.connectivity.service.PushApplicationService;
+import org.aerogear.connectivity.service.SenderService;
+
+/**
+ * Drains jobs from the dispatch queue and hands them to the {@link SenderService}. The message is
+ * only acknowledged once the send returned, so jobs of a crashed node are delivered again. A send
+ * that fails with an exception is reported as failed on the job, but is not delivered again: the
+ * device tokens that were sent before would get the message twice.
+ */
+public abstract class AbstractDispatchConsumer implements MessageListener {
+
+    @Inject private Logger logger;
+    @Inject private PushApplicationService pushApplicationService;
+    @Inject private SenderService senderService;
+    @Inject private PushJobRegistry pushJobRegistry;
+
+    @Override
+    public void onMessage(Message jmsMessage) {
+        final DispatchJob job;
+        try {
+            job = (DispatchJob) ((ObjectMessage) jmsMessage).getObject();
+        } catch (JMSException e) {
+            logger.severe("Could not read job from the dispatch queue: " + e.getMessage());
+            return;
+        }
+
+        // submitted on a different node (or expired): the progress is counted, but not visible
+        PushJob pushJob = pushJobRegistry.get(job.getJobID());
+        if (pushJob == null) {
+            pushJob = new PushJob(job.getJobID(), job.getPushApplicationID(), 1);
+        }
+
+        final PushApplication pushApplication = pushApplicationService.findByPushApplicationIDWithVariants(job.getPushApplicationID());
+        if (pushApplication == null) {
+            logger.warning("PushApplication '" + job.getPushApplicationID() + "' is gone, dropping job");
+            pushJob.networkFailed(job.getNetwork(), "PushApplication is gone");
+            return;
+        }
+
+        try {
+            if (job.isSelective()) {
+                final SelectiveSendMessage message = new SelectiveSendMessage();
+                message.putAll(job.getMessage());
+                senderService.sendToAliases(pushApplication, job.getNetwork(), message, pushJob);
+            } else {
+                final BroadcastMessage message = new BroadcastMessage();
+                message.putAll(job.getMessage());
+                senderService.broadcast(pushApplication, job.getNetwork(), message, pushJob);
+            }
+            pushJob.networkCompleted();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Delivery of job " + job.getJobID() + " to " + job.getNetwork() + " failed", e);
+            pushJob.networkFailed(job.getNetwork(), String.valueOf(e.getMessage()));
+        }
+    }
+}
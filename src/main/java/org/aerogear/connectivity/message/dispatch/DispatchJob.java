@@ -0,0 +1,71 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.dispatch;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.aerogear.connectivity.message.sender.PushNetwork;
+
+/**
+ * A submitted message, for one Push Network of a PushApplication. Jobs are
+ * stored in the (persistent) dispatch queue, until a worker has delivered them.
+ */
+public class DispatchJob implements Serializable {
+    private static final long serialVersionUID = 2412187313370227781L;
+
+    private final String jobID;
+    private final String pushApplicationID;
+    private final PushNetwork network;
+    private final boolean selective;
+    private final Map<String, Object> message;
+
+    public DispatchJob(String jobID, String pushApplicationID, PushNetwork network, boolean selective, Map<String, Object> message) {
+        this.jobID = jobID;
+        this.pushApplicationID = pushApplicationID;
+        this.network = network;
+        this.selective = selective;
+        this.message = message;
+    }
+
+    /**
+     * The ID of the {@link org.aerogear.connectivity.message.job.PushJob}, that this job is part of.
+     */
+    public String getJobID() {
+        return jobID;
+    }
+
+    public String getPushApplicationID() {
+        return pushApplicationID;
+    }
+
+    public PushNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * <code>true</code> for a selective send (to aliases), <code>false</code> for a broadcast.
+     */
+    public boolean isSelective() {
+        return selective;
+    }
+
+    public Map<String, Object> getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.dispatch;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.ejb.EJBException;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.aerogear.connectivity.message.job.PushJob;
+import org.aerogear.connectivity.message.job.PushJobRegistry;
+import org.aerogear.connectivity.message.sender.PushNetwork;
+import org.aerogear.connectivity.model.PushApplication;
+import org.aerogear.connectivity.rest.sender.messages.BroadcastMessage;
+import org.aerogear.connectivity.rest.sender.messages.SelectiveSendMessage;
+
+/**
+ * Puts submitted messages on the (persistent) dispatch queue: one job per Push Network, that
+ * is used by the PushApplication. The jobs are drained by the per-network consumers, which report
+ * their progress to the returned {@link PushJob}.
+ */
+@Stateless
+public class PushDispatcher {
+
+    public static final String NETWORK_PROPERTY = "network";
+
+    @Resource(mappedName = "java:/JmsXA")
+    private ConnectionFactory connectionFactory;
+
+    @Resource(mappedName = "java:/queue/AeroGearPushDispatch")
+    private Queue dispatchQueue;
+
+    @Inject
+    private PushJobRegistry pushJobRegistry;
+
+    @Inject
+    private Logger logger;
+
+    public PushJob broadcast(PushApplication pushApplication, BroadcastMessage message) {
+        return enqueue(pushApplication, false, message);
+    }
+
+    public PushJob sendToAliases(PushApplication pushApplication, SelectiveSendMessage message) {
+        return enqueue(pushApplication, true, message);
+    }
+
+    private PushJob enqueue(PushApplication pushApplication, boolean selective, Map<String, Object> message) {
+        final String jobID = pushJobRegistry.nextJobID();
+        final String pushApplicationID = pushApplication.getPushApplicationID();
+        int networks = 0;
+
+        Connection connection = null;
+        try {
+            connection = connectionFactory.createConnection();
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = session.createProducer(dispatchQueue);
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+
+            // only the networks that have variants:
+            if (! pushApplication.getIOSApps().isEmpty()) {
+                send(session, producer, new DispatchJob(jobID, pushApplicationID, PushNetwork.IOS, selective, message));
+                networks++;
+            }
+            if (! pushApplication.getAndroidApps().isEmpty()) {
+                send(session, producer, new DispatchJob(jobID, pushApplicationID, PushNetwork.ANDROID, selective, message));
+                networks++;
+            }
+            if (! pushApplication.getSimplePushApps().isEmpty()) {
+                send(session, producer, new DispatchJob(jobID, pushApplicationID, PushNetwork.SIMPLE_PUSH, selective, message));
+                networks++;
+            }
+        } catch (JMSException e) {
+            throw new EJBException("Could not submit message to the dispatch queue", e);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    logger.warning("Could not close the dispatch queue connection: " + e.getMessage());
+                }
+            }
+        }
+
+        // the consumers only see the jobs, once the surrounding transaction committed:
+        return pushJobRegistry.register(new PushJob(jobID, pushApplicationID, networks));
+    }
+
+    private void send(Session session, MessageProducer producer, DispatchJob job) throws JMSException {
+        final ObjectMessage jmsMessage = session.createObjectMessage(job);
+
+        // the consumers select by network:
+        jmsMessage.setStringProperty(NETWORK_PROPERTY, job.getNetwork().name());
+        // keeps jobs of one PushApplication (per network) in order, while others are drained in parallel:
+        jmsMessage.setStringProperty("JMSXGroupID", job.getPushApplicationID() + ":" + job.getNetwork().name());
+
+        producer.send(jmsMessage);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.dispatch;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.message.sender.PushNetwork;
+import org.aerogear.connectivity.message.util.DaemonThreadFactory;
+import org.aerogear.connectivity.metrics.PushMetrics;
+
+import com.codahale.metrics.Gauge;
+
+/**
+ * One bounded worker pool per Push Network, so that a slow network does not hold up
+ * the delivery to the others. Each pool is sized with <code>aerogear.push.{network}.threads</code>
+ * and <code>aerogear.push.{network}.queue</code>. Once the queue is full, the submitting
+ * thread runs the delivery itself, which slows down the token loading (back-pressure).
+ */
+@ApplicationScoped
+public class PushNetworkExecutors {
+
+    private final Map<PushNetwork, ThreadPoolExecutor> executors = new EnumMap<PushNetwork, ThreadPoolExecutor>(PushNetwork.class);
+
+    @Inject
+    private PushMetrics metrics;
+
+    @PostConstruct
+    public void createExecutors() {
+        executors.put(PushNetwork.IOS, createExecutor("ios", 4));
+        executors.put(PushNetwork.ANDROID, createExecutor("android", 8));
+        executors.put(PushNetwork.SIMPLE_PUSH, createExecutor("simplepush", 4));
+
+        // a full queue means, the network is saturated:
+        for (Map.Entry<PushNetwork, ThreadPoolExecutor> entry : executors.entrySet()) {
+            final ThreadPoolExecutor executor = entry.getValue();
+            metrics.gauge(new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return executor.getQueue().size();
+                }
+            }, "executor", PushMetrics.name(entry.getKey()), "queue");
+            metrics.gauge(new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return executor.getActiveCount();
+                }
+            }, "executor", PushMetrics.name(entry.getKey()), "active");
+        }
+    }
+
+    public ExecutorService forNetwork(PushNetwork network) {
+        return executors.get(network);
+    }
+
+    @PreDestroy
+    public void shutdownExecutors() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor(String name, int defaultThreads) {
+        final int threads = Configuration.getInt("aerogear.push." + name + ".threads", defaultThreads);
+        final int queueSize = Configuration.getInt("aerogear.push." + name + ".queue", 100);
+
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize),
+                new DaemonThreadFactory(name),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.feedback;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.inject.Inject;
+
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.message.cache.APNsCache;
+import org.aerogear.connectivity.metrics.PushMetrics;
+import org.aerogear.connectivity.model.iOSVariant;
+import org.aerogear.connectivity.service.PushFeedbackService;
+import org.aerogear.connectivity.service.iOSVariantService;
+
+import com.codahale.metrics.Gauge;
+import com.notnoop.exceptions.ApnsException;
+
+/**
+ * Polls the APNs feedback service for every iOS variant, every
+ * <code>aerogear.push.apns.feedback.interval</code> minutes (default: 30), and removes
+ * the installations of uninstalled apps. A token is reported with the date APNs noticed the
+ * uninstall: installations that registered again after that date (a reinstall) are kept.
+ */
+@Singleton
+@Startup
+public class APNsFeedbackCollector {
+
+    @Inject private Logger logger;
+    @Inject private APNsCache apnsCache;
+    @Inject private iOSVariantService iOSVariantService;
+    @Inject private PushFeedbackService pushFeedbackService;
+    @Inject private PushMetrics metrics;
+
+    @Resource
+    private TimerService timerService;
+
+    // number of removed installations, by the last run and in total:
+    private final AtomicLong lastRunPruned = new AtomicLong();
+    private final AtomicLong totalPruned = new AtomicLong();
+
+    @PostConstruct
+    public void scheduleCollector() {
+        metrics.gauge(new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return lastRunPruned.get();
+            }
+        }, "feedback", "apns", "pruned", "last_run");
+        metrics.gauge(new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return totalPruned.get();
+            }
+        }, "feedback", "apns", "pruned", "total");
+
+        final long interval = Configuration.getInt("aerogear.push.apns.feedback.interval", 30) * 60 * 1000L;
+        // not persistent: there is nothing to catch up after a restart
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @Timeout
+    public void collectInactiveDevices() {
+        long pruned = 0;
+
+        for (iOSVariant variant : iOSVariantService.findAlliOSVariants()) {
+            final String variantID = variant.getVariantID();
+            try {
+                final Map<String, Date> inactiveDevices = apnsCache.getInactiveDevices(variant);
+                if (! inactiveDevices.isEmpty()) {
+                    pruned += pushFeedbackService.removeInactiveDeviceTokens(variantID, withLowerCaseTokens(inactiveDevices));
+                }
+            } catch (ApnsException e) {
+                // e.g. not reachable, or an invalid certificate:
+                logger.warning("Could not read APNs feedback for variant " + variantID + ": " + e.getMessage());
+            }
+        }
+
+        lastRunPruned.set(pruned);
+        totalPruned.addAndGet(pruned);
+        logger.info("APNs feedback: removed " + pruned + " inactive iOS installations");
+    }
+
+    // the feedback service returns upper case hex, while devices usually register lower case tokens
+    private Map<String, Date> withLowerCaseTokens(Map<String, Date> tokens) {
+        final Map<String, Date> allTokens = new HashMap<String, Date>(tokens);
+        for (Map.Entry<String, Date> token : tokens.entrySet()) {
+            allTokens.put(token.getKey().toLowerCase(Locale.ENGLISH), token.getValue());
+        }
+        return allTokens;
+    }
+}
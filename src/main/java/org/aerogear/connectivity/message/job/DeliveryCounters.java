@@ -0,0 +1,108 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.message.job;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aerogear.connectivity.message.sender.PushNetwork;
+
+/**
+ * The progress of a push job, for one variant (or summed up for a Push Network). The counters
+ * are only incremented by the delivery threads, no lock is taken.
+ */
+public class DeliveryCounters {
+
+    private final PushNetwork network;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+    private final AtomicLong retrying = new AtomicLong();
+
+    public DeliveryCounters(PushNetwork network) {
+        this.network = network;
+    }
+
+    public PushNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Device tokens that were handed to a worker of the Push Network.
+     */
+    public long getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Device tokens that the Push Network accepted.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Device tokens that could not be delivered (including the ones that were pruned).
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Installations that were removed, because the Push Network reported them as inactive.
+     */
+    public long getPruned() {
+        return pruned.get();
+    }
+
+    /**
+     * Device tokens that failed temporarily and wait for a retry; they are counted as sent or
+     * failed, once the retry settled.
+     */
+    public long getRetrying() {
+        return retrying.get();
+    }
+
+    public void addQueued(long count) {
+        queued.addAndGet(count);
+    }
+
+    public void addSent(long count) {
+        sent.addAndGet(count);
+    }
+
+    public void addFailed(long count) {
+        failed.addAndGet(count);
+    }
+
+    public void addPruned(long count) {
+        pruned.addAndGet(count);
+    }
+
+    public void addRetrying(long count) {
+        retrying.addAndGet(count);
+    }
+
+    void addAll(DeliveryCounters other) {
+        addQueued(other.getQueued());
+        addSent(other.getSent());
+        addFailed(other.getFailed());
+        addPruned(other.getPruned());
+        addRetrying(other.getRetrying());
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.message.job;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aerogear.connectivity.message.sender.PushNetwork;
+
+/**
+ * A submitted message, and the live progress of its delivery: one set of {@link DeliveryCounters}
+ * per variant. The job is done, once the dispatch jobs of all its Push Networks were drained (or
+ * failed), and no device token waits for a retry anymore.
+ */
+public class PushJob {
+
+    private final String id;
+    private final String pushApplicationID;
+    private final long submitted;
+    private final int networks;
+
+    private final AtomicInteger completedNetworks = new AtomicInteger();
+    private final ConcurrentMap<String, DeliveryCounters> variants = new ConcurrentHashMap<String, DeliveryCounters>();
+    private final ConcurrentMap<PushNetwork, String> errors = new ConcurrentHashMap<PushNetwork, String>();
+
+    public PushJob(String id, String pushApplicationID, int networks) {
+        this.id = id;
+        this.pushApplicationID = pushApplicationID;
+        this.networks = networks;
+        this.submitted = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPushApplicationID() {
+        return pushApplicationID;
+    }
+
+    public Date getSubmitted() {
+        return new Date(submitted);
+    }
+
+    long getSubmittedMillis() {
+        return submitted;
+    }
+
+    public boolean isCompleted() {
+        if (completedNetworks.get() < networks) {
+            return false;
+        }
+        for (DeliveryCounters counters : variants.values()) {
+            if (counters.getRetrying() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by the dispatch consumer, once all deliveries of one Push Network have returned.
+     */
+    public void networkCompleted() {
+        completedNetworks.incrementAndGet();
+    }
+
+    /**
+     * Called by the dispatch consumer, when the delivery to one Push Network failed as a whole:
+     * the job does not wait for it anymore.
+     */
+    public void networkFailed(PushNetwork network, String error) {
+        errors.put(network, error);
+        completedNetworks.incrementAndGet();
+    }
+
+    /**
+     * The Push Networks whose delivery failed as a whole, and why.
+     */
+    public Map<PushNetwork, String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * The counters of the given variant; looked up once per variant by the sender, and then
+     * shared by its delivery threads.
+     */
+    public DeliveryCounters countersFor(PushNetwork network, String variantID) {
+        DeliveryCounters counters = variants.get(variantID);
+        if (counters == null) {
+            final DeliveryCounters newCounters = new DeliveryCounters(network);
+            counters = variants.putIfAbsent(variantID, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+            }
+        }
+        return counters;
+    }
+
+    public Map<String, DeliveryCounters> getVariants() {
+        return variants;
+    }
+
+    /**
+     * The counters of the variants, summed up per Push Network.
+     */
+    public Map<PushNetwork, DeliveryCounters> getNetworks() {
+        final Map<PushNetwork, DeliveryCounters> totals = new EnumMap<PushNetwork, DeliveryCounters>(PushNetwork.class);
+        for (DeliveryCounters counters : variants.values()) {
+            DeliveryCounters total = totals.get(counters.getNetwork());
+            if (total == null) {
+                total = new DeliveryCounters(counters.getNetwork());
+                totals.put(counters.getNetwork(), total);
+            }
+            total.addAll(counters);
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.message.job;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.aerogear.connectivity.config.Configuration;
+
+/**
+ * Keeps the push jobs of this node in memory, so that their progress can be queried. The number
+ * of jobs is bounded, and a job is dropped once it is older than the retention time.
+ */
+@ApplicationScoped
+public class PushJobRegistry {
+
+    private static final int MAX_JOBS = Configuration.getInt("aerogear.push.jobs.max", 10000);
+    private static final long RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(Configuration.getInt("aerogear.push.jobs.retention", 60));
+
+    private final ConcurrentMap<String, PushJob> jobs = new ConcurrentHashMap<String, PushJob>();
+    // the job IDs, oldest first:
+    private final Queue<String> submissionOrder = new ConcurrentLinkedQueue<String>();
+
+    public String nextJobID() {
+        return UUID.randomUUID().toString();
+    }
+
+    public PushJob register(PushJob job) {
+        evictExpired();
+        jobs.put(job.getId(), job);
+        submissionOrder.add(job.getId());
+        return job;
+    }
+
+    /**
+     * Returns <code>null</code>, if the job is unknown (submitted on a different node) or expired.
+     */
+    public PushJob get(String jobID) {
+        if (jobID == null) {
+            return null;
+        }
+        return jobs.get(jobID);
+    }
+
+    private void evictExpired() {
+        final long expired = System.currentTimeMillis() - RETENTION_MILLIS;
+        String oldest;
+        while ((oldest = submissionOrder.peek()) != null) {
+            final PushJob job = jobs.get(oldest);
+            if (job != null && jobs.size() < MAX_JOBS && job.getSubmittedMillis() > expired) {
+                return;
+            }
+            if (submissionOrder.remove(oldest)) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
@@ -17,38 +17,57 @@
 
 package org.aerogear.connectivity.message.sender;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
 
 import javax.inject.Inject;
 
 import org.aerogear.connectivity.message.cache.APNsCache;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
 import org.aerogear.connectivity.message.sender.annotations.APNsSender;
 import org.aerogear.connectivity.model.iOSVariant;
 
-import com.notnoop.apns.APNS;
 import com.notnoop.apns.ApnsService;
+import com.notnoop.apns.internal.Utilities;
 
 @APNsSender
 public class APNsPushNotificationSender  {
+
+    /**
+     * Max. size (in bytes) of the APNs payload.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = Utilities.MAX_PAYLOAD_LENGTH;
     
     @Inject APNsCache apnsCache;
-    
-    public void sendPushMessage(iOSVariant iOSVariant, Collection<String> tokens, UnifiedPushMessage pushMessage) {
-        
-            String apnsMessage = APNS.newPayload()
-                    // adding recognized key values
-                    .alertBody(pushMessage.getAlert())    // alert dialog, in iOS
-                    .badge(pushMessage.getBadge())        // little badge icon update;
-                    .sound(pushMessage.getSound())        // sound to be played by app
+    @Inject private Logger logger;
+
+    public void sendPushMessage(iOSVariant iOSVariant, Collection<String> tokens, byte[] payload, DeliveryCounters counters) {
 
-                    .customFields(pushMessage.getData())  // adding other (submitted) fields
+            // APNs would drop the connection:
+            if (payload.length > MAX_PAYLOAD_LENGTH) {
+                logger.severe("APNs payload of " + payload.length + " bytes exceeds the limit of " + MAX_PAYLOAD_LENGTH + " bytes");
+                counters.addFailed(tokens.size());
+                return;
+            }
 
-                    .build();  // build the JSON payload, for APNs 
+            final List<byte[]> deviceTokens = new ArrayList<byte[]>(tokens.size());
+            for (String token : tokens) {
+                deviceTokens.add(Utilities.decodeHex(token));
+            }
 
             // look up the ApnsService from the cache:
             ApnsService service = apnsCache.getApnsServiceForVariant(iOSVariant);
 
             // send: 
-            service.push(tokens, apnsMessage);
+            try {
+                service.push(deviceTokens, payload);
+            } catch (RuntimeException e) {
+                counters.addFailed(deviceTokens.size());
+                throw e;
+            }
+            // APNs does not confirm a delivery, inactive tokens are reported by the feedback service:
+            counters.addSent(deviceTokens.size());
     }
 }
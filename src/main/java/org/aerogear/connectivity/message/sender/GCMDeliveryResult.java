@@ -0,0 +1,88 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.sender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.android.gcm.server.MulticastResult;
+import com.google.android.gcm.server.Result;
+
+/**
+ * The merged outcome of all multicast requests, that were needed to deliver a message
+ * to a collection of registration IDs. The registration IDs and their results share the
+ * same index; the result is <code>null</code> if the request of its chunk failed as a whole.
+ */
+public class GCMDeliveryResult {
+
+    private final List<String> registrationIDs = new ArrayList<String>();
+    private final List<Result> results = new ArrayList<Result>();
+
+    private int success;
+    private int failure;
+    private int canonicalIds;
+
+    /**
+     * Adds the result of one multicast request. A <code>null</code> result marks
+     * all registration IDs of the chunk as failed.
+     */
+    public void add(List<String> chunk, MulticastResult multicastResult) {
+        registrationIDs.addAll(chunk);
+
+        if (multicastResult == null) {
+            results.addAll(Collections.<Result>nCopies(chunk.size(), null));
+            failure += chunk.size();
+        } else {
+            results.addAll(multicastResult.getResults());
+            success += multicastResult.getSuccess();
+            failure += multicastResult.getFailure();
+            canonicalIds += multicastResult.getCanonicalIds();
+        }
+    }
+
+    public List<String> getRegistrationIDs() {
+        return registrationIDs;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public int getSuccess() {
+        return success;
+    }
+
+    public int getFailure() {
+        return failure;
+    }
+
+    public int getCanonicalIds() {
+        return canonicalIds;
+    }
+
+    public int getTotal() {
+        return registrationIDs.size();
+    }
+
+    @Override
+    public String toString() {
+        return "GCMDeliveryResult(total=" + getTotal() + ", success=" + success + ", failure=" + failure
+                + ", canonicalIds=" + canonicalIds + ")";
+    }
+}
@@ -18,50 +18,287 @@
 package org.aerogear.connectivity.message.sender;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.aerogear.connectivity.config.Configuration;
 import org.aerogear.connectivity.message.cache.GCMCache;
+import org.aerogear.connectivity.message.cache.GCMTransport;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
 import org.aerogear.connectivity.message.sender.annotations.GCMSender;
+import org.aerogear.connectivity.message.util.DaemonThreadFactory;
+import org.aerogear.connectivity.metrics.PushMetrics;
+import org.aerogear.connectivity.model.AndroidVariant;
+import org.aerogear.connectivity.service.PushFeedbackService;
 
+import com.codahale.metrics.Timer;
+import com.google.android.gcm.server.Constants;
+import com.google.android.gcm.server.InvalidRequestException;
 import com.google.android.gcm.server.Message;
 import com.google.android.gcm.server.MulticastResult;
-import com.google.android.gcm.server.Sender;
-import com.google.android.gcm.server.Message.Builder;
+import com.google.android.gcm.server.Result;
 
 @GCMSender
 @ApplicationScoped
 public class GCMPushNotificationSender {
-    
+
+    // max. number of registration IDs, per multicast request:
+    public static final int MULTICAST_LIMIT = 1000;
+
+    // retries of the registration IDs that failed temporarily, with exponential backoff (ms):
+    private static final int MAX_RETRIES = Configuration.getInt("aerogear.push.gcm.retries", 5);
+    static final long BACKOFF_INITIAL_DELAY = Configuration.getInt("aerogear.push.gcm.backoff", 1000);
+    static final long MAX_BACKOFF_DELAY = Configuration.getInt("aerogear.push.gcm.max_backoff", 60000);
+
+    @Inject Logger logger;
     @Inject GCMCache cache;
-    
-    public void sendPushMessage(Collection<String> tokens, UnifiedPushMessage pushMessage, String apiKey) {
-        // payload builder:
-        Builder gcmBuilder = new Message.Builder();
-        
-        // add the "regconized" keys...
-        gcmBuilder.addData("alert", pushMessage.getAlert());
-        gcmBuilder.addData("sound", pushMessage.getSound());
-        gcmBuilder.addData("badge", ""+pushMessage.getBadge());
-        
-        // iterate over the missing keys:
-        Set<String> keys = pushMessage.getData().keySet();
-        for (String key : keys) {
-            gcmBuilder.addData(key, (String) pushMessage.getData().get(key));
-        }
-
-        Message gcmMessage = gcmBuilder.build();
-
-        // send it out.....
+    @Inject PushFeedbackService pushFeedbackService;
+    @Inject PushMetrics metrics;
+
+    // runs the retries once their backoff expired; no worker thread sleeps:
+    private ScheduledExecutorService retryScheduler;
+
+    // the retries that did not start yet, failed on shutdown:
+    private final Set<RetryTask> pendingRetries = Collections.newSetFromMap(new ConcurrentHashMap<RetryTask, Boolean>());
+
+    private final Random random = new Random();
+
+    // latency of the multicast requests:
+    private Timer requestTimer;
+
+    @PostConstruct
+    public void createRetryScheduler() {
+        retryScheduler = Executors.newScheduledThreadPool(2, new DaemonThreadFactory("gcm-retry"));
+        requestTimer = metrics.timer("sender", PushMetrics.name(PushNetwork.ANDROID), "request");
+    }
+
+    public GCMDeliveryResult sendPushMessage(AndroidVariant androidVariant, Collection<String> tokens, UnifiedPushMessage pushMessage,
+            DeliveryCounters counters) {
+        final GCMDeliveryResult deliveryResult = new GCMDeliveryResult();
+        if (tokens.isEmpty()) {
+            return deliveryResult;
+        }
+
+        // built once per message, shared by all variants:
+        final Message gcmMessage = pushMessage.getGCMMessage();
+        final GCMTransport sender = cache.getSenderForAPIKey(androidVariant.getGoogleKey());
+
+        // split into chunks, that GCM accepts:
+        final List<String> registrationIDs = new ArrayList<String>(tokens);
+        final List<List<String>> chunks = new ArrayList<List<String>>();
+        for (int i = 0; i < registrationIDs.size(); i += MULTICAST_LIMIT) {
+            chunks.add(registrationIDs.subList(i, Math.min(i + MULTICAST_LIMIT, registrationIDs.size())));
+        }
+
+        // send it out, one chunk after the other (the deliveries of the ANDROID workers run in parallel):
+        for (List<String> chunk : chunks) {
+            deliveryResult.add(chunk, sendChunk(androidVariant, sender, gcmMessage, chunk, 0, counters));
+        }
+
+        logger.fine("GCM delivery: " + deliveryResult);
+        processDeliveryResult(androidVariant, deliveryResult, counters);
+
+        return deliveryResult;
+    }
+
+    /**
+     * Removes the installations that GCM reported as gone, and applies the canonical registration IDs,
+     * so that the next delivery does not include them again.
+     */
+    void processDeliveryResult(AndroidVariant androidVariant, GCMDeliveryResult deliveryResult, DeliveryCounters counters) {
+        final List<String> inactiveTokens = new ArrayList<String>();
+        final Map<String, String> canonicalTokens = new LinkedHashMap<String, String>();
+
+        final List<String> registrationIDs = deliveryResult.getRegistrationIDs();
+        final List<Result> results = deliveryResult.getResults();
+        for (int i = 0; i < registrationIDs.size(); i++) {
+            final Result result = results.get(i);
+            if (result == null) {
+                continue;
+            }
+
+            if (result.getMessageId() != null) {
+                // delivered, but the device has a newer registration ID:
+                if (result.getCanonicalRegistrationId() != null) {
+                    canonicalTokens.put(registrationIDs.get(i), result.getCanonicalRegistrationId());
+                }
+            } else {
+                final String error = result.getErrorCodeName();
+                if (Constants.ERROR_NOT_REGISTERED.equals(error) || Constants.ERROR_INVALID_REGISTRATION.equals(error)) {
+                    inactiveTokens.add(registrationIDs.get(i));
+                }
+            }
+        }
+
+        if (! inactiveTokens.isEmpty()) {
+            counters.addPruned(pushFeedbackService.removeInactiveDeviceTokens(androidVariant.getVariantID(), inactiveTokens));
+        }
+        if (! canonicalTokens.isEmpty()) {
+            pushFeedbackService.updateDeviceTokens(androidVariant.getVariantID(), canonicalTokens);
+        }
+    }
+
+    /**
+     * Sends one multicast request, returns <code>null</code> if the request failed. The registration
+     * IDs that failed temporarily (GCM unavailable) are handed to the retry scheduler.
+     */
+    private MulticastResult sendChunk(AndroidVariant androidVariant, GCMTransport sender, Message gcmMessage, List<String> chunk,
+            int attempt, DeliveryCounters counters) {
+        MulticastResult result = null;
+        List<String> retriable = chunk;
+        final Timer.Context request = requestTimer.time();
         try {
-            Sender sender = cache.getSenderForAPIKey(apiKey);
-            MulticastResult result = sender.send(gcmMessage, (List<String>) tokens, 0);
+            result = sender.sendNoRetry(gcmMessage, chunk);
+            retriable = temporarilyFailed(chunk, result);
+            counters.addSent(result.getSuccess());
+            counters.addFailed(result.getFailure() - retriable.size());
+        } catch (InvalidRequestException e) {
+            if (e.getHttpStatusCode() < 500) {
+                // e.g. an invalid API key, a retry would fail again:
+                logger.severe("GCM rejected the request (HTTP " + e.getHttpStatusCode() + ") for variant " + androidVariant.getVariantID());
+                counters.addFailed(chunk.size());
+                retriable = Collections.emptyList();
+            } else {
+                logger.warning("GCM is unavailable (HTTP " + e.getHttpStatusCode() + ")");
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warning("Sending to GCM failed: " + e.getMessage());
+        } finally {
+            request.stop();
+        }
+
+        if (! retriable.isEmpty()) {
+            scheduleRetry(androidVariant, sender, gcmMessage, retriable, attempt + 1, sender.getRetryAfterMillis(), counters);
+        }
+        return result;
+    }
+
+    List<String> temporarilyFailed(List<String> chunk, MulticastResult result) {
+        final List<String> failed = new ArrayList<String>();
+        final List<Result> results = result.getResults();
+        for (int i = 0; i < chunk.size() && i < results.size(); i++) {
+            final String error = results.get(i).getErrorCodeName();
+            if (Constants.ERROR_UNAVAILABLE.equals(error) || Constants.ERROR_INTERNAL_SERVER_ERROR.equals(error)) {
+                failed.add(chunk.get(i));
+            }
+        }
+        return failed;
+    }
+
+    private void scheduleRetry(AndroidVariant androidVariant, GCMTransport sender, Message gcmMessage,
+            List<String> registrationIDs, int attempt, long retryAfterMillis, DeliveryCounters counters) {
+
+        if (attempt > MAX_RETRIES) {
+            logger.severe("Giving up on " + registrationIDs.size() + " registration IDs of variant "
+                    + androidVariant.getVariantID() + ", after " + MAX_RETRIES + " retries");
+            counters.addFailed(registrationIDs.size());
+            return;
+        }
+
+        // the server's Retry-After wins over a shorter backoff:
+        final long delay = Math.max(retryAfterMillis, backoff(attempt));
+        counters.addRetrying(registrationIDs.size());
+        final RetryTask retry = new RetryTask(androidVariant, sender, gcmMessage, registrationIDs, attempt, counters);
+        pendingRetries.add(retry);
+        try {
+            retryScheduler.schedule(retry, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down:
+            retry.abandon();
+        }
+    }
+
+    /**
+     * The retry of some registration IDs; it either runs, or is abandoned (counted as failed) on shutdown.
+     */
+    private class RetryTask implements Runnable {
+
+        private final AndroidVariant androidVariant;
+        private final GCMTransport sender;
+        private final Message gcmMessage;
+        private final List<String> registrationIDs;
+        private final int attempt;
+        private final DeliveryCounters counters;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        RetryTask(AndroidVariant androidVariant, GCMTransport sender, Message gcmMessage, List<String> registrationIDs,
+                int attempt, DeliveryCounters counters) {
+            this.androidVariant = androidVariant;
+            this.sender = sender;
+            this.gcmMessage = gcmMessage;
+            this.registrationIDs = registrationIDs;
+            this.attempt = attempt;
+            this.counters = counters;
+        }
+
+        @Override
+        public void run() {
+            if (! claim()) {
+                return;
+            }
+            try {
+                final GCMDeliveryResult retryResult = new GCMDeliveryResult();
+                retryResult.add(registrationIDs, sendChunk(androidVariant, sender, gcmMessage, registrationIDs, attempt, counters));
+                processDeliveryResult(androidVariant, retryResult, counters);
+            } finally {
+                // after the next retry (if any) was counted, so that the job does not look settled in between:
+                counters.addRetrying(-registrationIDs.size());
+            }
+        }
+
+        /**
+         * Counts the registration IDs as failed, unless the retry already started; returns their number.
+         */
+        int abandon() {
+            if (! claim()) {
+                return 0;
+            }
+            counters.addRetrying(-registrationIDs.size());
+            counters.addFailed(registrationIDs.size());
+            return registrationIDs.size();
+        }
+
+        private boolean claim() {
+            pendingRetries.remove(this);
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    // exponential, with a random jitter (between half and the full backoff), so that retries do not align:
+    long backoff(int attempt) {
+        final long backoff = Math.min(MAX_BACKOFF_DELAY, BACKOFF_INITIAL_DELAY << Math.min(attempt - 1, 20));
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    @PreDestroy
+    public void shutdownRetryScheduler() {
+        // the dropped tasks are the scheduler's futures, the retries they wrap are the pending ones:
+        final int dropped = retryScheduler.shutdownNow().size();
+
+        int abandoned = 0;
+        for (RetryTask retry : pendingRetries) {
+            abandoned += retry.abandon();
+        }
+        if (abandoned > 0) {
+            logger.warning("Shutting down: abandoned " + dropped + " scheduled GCM retries, of " + abandoned + " registration IDs (counted as failed)");
         }
     }
 }
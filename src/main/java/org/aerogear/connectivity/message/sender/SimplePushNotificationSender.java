@@ -18,8 +18,15 @@
 package org.aerogear.connectivity.message.sender;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
@@ -27,54 +34,156 @@ import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
 import org.aerogear.connectivity.message.sender.annotations.SimplePushSender;
+import org.aerogear.connectivity.metrics.PushMetrics;
+
+import com.codahale.metrics.Gauge;
 
+import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
-import java.io.Serializable;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
 
 @SimplePushSender
 @ApplicationScoped
 public class SimplePushNotificationSender implements Serializable {
     private static final long serialVersionUID = 5747687132270998712L;
 
-
+    // the status code, for requests that did not get a response:
+    private static final int NO_RESPONSE = -1;
 
     private AsyncHttpClient asyncHttpClient;
+    // limits the number of PUT requests in flight, across all deliveries:
+    private Semaphore inflightRequests;
+    // connect and request timeout, in ms:
+    private int timeout;
     @Inject private Logger logger;    
+    @Inject private PushMetrics metrics;
     
     @PostConstruct
     public void createAsyncHttpClient() {
-        asyncHttpClient = new AsyncHttpClient();
+        final int maxInflight = Configuration.getInt("aerogear.push.simplepush.max_inflight", 200);
+        timeout = Configuration.getInt("aerogear.push.simplepush.timeout", 30000);
+
+        inflightRequests = new Semaphore(maxInflight);
+        asyncHttpClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAllowPoolingConnection(true)
+                .setMaximumConnectionsTotal(maxInflight)
+                .setMaximumConnectionsPerHost(maxInflight)
+                .setConnectionTimeoutInMs(timeout)
+                .setRequestTimeoutInMs(timeout)
+                .build());
+
+        metrics.gauge(new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return maxInflight - inflightRequests.availablePermits();
+            }
+        }, "sender", PushMetrics.name(PushNetwork.SIMPLE_PUSH), "inflight");
     }
     
-    public void sendMessage(String endpoint, String payload, List<String> channels) {
+    /**
+     * Sends the payload to all channels, without waiting for the response of one channel before
+     * sending to the next. Returns once all requests completed.
+     */
+    public void sendMessage(String endpoint, String payload, List<String> channels, DeliveryCounters counters) {
+        final CountDownLatch completedRequests = new CountDownLatch(channels.size());
+        final ConcurrentMap<Integer, AtomicInteger> statusCodes = new ConcurrentHashMap<Integer, AtomicInteger>();
+
         // iterate over all the given channels:
         for (String channelID : channels) {
+            try {
+                inflightRequests.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // the remaining channels are not notified:
+                counters.addFailed(completedRequests.getCount());
+                return;
+            }
 
+            boolean submitted = false;
             try {
-                // blocking IO here:
-                com.ning.http.client.Response response =
-                        asyncHttpClient.preparePut(endpoint + channelID)
-                          .addHeader("Accept", "application/x-www-form-urlencoded")
-                          .setBody(payload) // should be a string like 'version=123'
-                          .execute().get();
-
-                int simplePushStatusCode = response.getStatusCode();
-                logger.info("SimplePush Status: " + simplePushStatusCode);
-                if (200 != simplePushStatusCode) {
-                    logger.severe("ERROR ??????     STATUS CODE, from PUSH NETWORK was NOT 200, but....: " + simplePushStatusCode);
-                }
+                asyncHttpClient.preparePut(endpoint + channelID)
+                    .addHeader("Accept", "application/x-www-form-urlencoded")
+                    .setBody(payload) // should be a string like 'version=123'
+                    .execute(new AsyncCompletionHandler<Integer>() {
+                        @Override
+                        public Integer onCompleted(Response response) {
+                            completed(response.getStatusCode());
+                            return response.getStatusCode();
+                        }
 
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
+                        @Override
+                        public void onThrowable(Throwable t) {
+                            logger.fine("SimplePush request failed: " + t.getMessage());
+                            completed(NO_RESPONSE);
+                        }
+
+                        private void completed(int statusCode) {
+                            countStatusCode(statusCodes, statusCode);
+                            inflightRequests.release();
+                            completedRequests.countDown();
+                        }
+                    });
+                submitted = true;
             } catch (IOException e) {
-                e.printStackTrace();
+                logger.fine("SimplePush request failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // e.g. a malformed URL:
+                logger.warning("SimplePush request to " + endpoint + channelID + " failed: " + e.getMessage());
+            } finally {
+                if (! submitted) {
+                    countStatusCode(statusCodes, NO_RESPONSE);
+                    inflightRequests.release();
+                    completedRequests.countDown();
+                }
+            }
+        }
+
+        // the pending requests are at most the ones in flight, each one ends with its request timeout:
+        long pending = 0;
+        try {
+            if (! completedRequests.await(timeout + 5000L, TimeUnit.MILLISECONDS)) {
+                pending = completedRequests.getCount();
+                logger.warning("SimplePush delivery to " + endpoint + ": no response for " + pending + " channels");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending = completedRequests.getCount();
+        }
+        counters.addFailed(pending);
+        logStatus(endpoint, statusCodes, counters);
+    }
+
+    private void countStatusCode(ConcurrentMap<Integer, AtomicInteger> statusCodes, int statusCode) {
+        AtomicInteger count = statusCodes.get(statusCode);
+        if (count == null) {
+            final AtomicInteger newCount = new AtomicInteger();
+            count = statusCodes.putIfAbsent(statusCode, newCount);
+            if (count == null) {
+                count = newCount;
             }
         }
+        count.incrementAndGet();
+    }
+
+    private void logStatus(String endpoint, Map<Integer, AtomicInteger> statusCodes, DeliveryCounters counters) {
+        final AtomicInteger ok = statusCodes.remove(200);
+        final int delivered = (ok == null) ? 0 : ok.get();
+
+        counters.addSent(delivered);
+        for (AtomicInteger failed : statusCodes.values()) {
+            counters.addFailed(failed.get());
+        }
+
+        if (statusCodes.isEmpty()) {
+            logger.fine("SimplePush delivery to " + endpoint + ": " + delivered + " delivered");
+        } else {
+            // the status codes (-1 for no response) and the number of channels that got it:
+            logger.severe("SimplePush delivery to " + endpoint + ": " + delivered + " delivered, failed: " + statusCodes);
+        }
     }
 
     @PreDestroy
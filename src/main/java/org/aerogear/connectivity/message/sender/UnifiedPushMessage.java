@@ -17,14 +17,30 @@
 
 package org.aerogear.connectivity.message.sender;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
-// helper class
+import com.google.android.gcm.server.Message;
+import com.notnoop.apns.APNS;
+import com.notnoop.apns.internal.Utilities;
+
+/**
+ * Immutable view of a submitted message. The submitted map is parsed once (and not modified),
+ * and the encodings for the Push Networks are built on first use and shared by all variants
+ * (and threads) that deliver the message.
+ */
 public class UnifiedPushMessage {
     private final String alert;
     private final String sound;
     private final int badge;
-    private final Map<String, ? extends Object> data;
+    private final String simplePush;
+    private final Map<String, Object> data;
+
+    // lazily built, once per message (a racing thread builds the same value):
+    private volatile byte[] apnsPayload;
+    private volatile Message gcmMessage;
 
     public String getAlert() {
         return alert;
@@ -38,23 +54,92 @@ public class UnifiedPushMessage {
         return badge;
     }
 
+    /**
+     * The SimplePush version (e.g. <code>version=123</code>) of a broadcast, or <code>null</code>.
+     */
+    public String getSimplePush() {
+        return simplePush;
+    }
+
+    /**
+     * The submitted fields, without the special key words (read-only).
+     */
     public Map<String, ? extends Object> getData() {
         return data;
     }
 
-    public UnifiedPushMessage(Map<String, ? extends Object> data) {
+    public UnifiedPushMessage(Map<String, ? extends Object> message) {
+        final Map<String, Object> fields = new LinkedHashMap<String, Object>(message);
+
         // special key words (for APNs)
-        this.alert = (String) data.remove("alert");
-        this.sound = (String) data.remove("sound");
+        this.alert = (String) fields.remove("alert");
+        this.sound = (String) fields.remove("sound");
         
-        Integer badgeVal = (Integer) data.remove("badge");
+        Number badgeVal = (Number) fields.remove("badge");
         if (badgeVal == null) {
             this.badge = -1;
         } else {
-            this.badge = badgeVal;
+            this.badge = badgeVal.intValue();
         }
 
+        // SimplePush: a version for the broadcast (a map of channels for a selective send)
+        final Object simplePushVal = fields.remove("simple-push");
+        this.simplePush = (simplePushVal instanceof String) ? (String) simplePushVal : null;
+
         // rest of the data:
-        this.data = data;
+        this.data = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * The APNs payload (UTF-8 encoded JSON).
+     */
+    public byte[] getAPNsPayload() {
+        byte[] payload = apnsPayload;
+        if (payload == null) {
+            final String apnsMessage = APNS.newPayload()
+                    // adding recognized key values
+                    .alertBody(alert)    // alert dialog, in iOS
+                    .badge(badge)        // little badge icon update;
+                    .sound(sound)        // sound to be played by app
+
+                    .customFields(data)  // adding other (submitted) fields
+
+                    .build();  // build the JSON payload, for APNs
+
+            payload = Utilities.toUTF8Bytes(apnsMessage);
+            apnsPayload = payload;
+        }
+        // shared, must not be modified by the callers
+        return payload;
+    }
+
+    /**
+     * The GCM message, all values are sent as strings.
+     */
+    public Message getGCMMessage() {
+        Message message = gcmMessage;
+        if (message == null) {
+            final Message.Builder gcmBuilder = new Message.Builder();
+
+            // add the "regconized" keys...
+            addData(gcmBuilder, "alert", alert);
+            addData(gcmBuilder, "sound", sound);
+            gcmBuilder.addData("badge", String.valueOf(badge));
+
+            // iterate over the missing keys:
+            for (Entry<String, Object> field : data.entrySet()) {
+                addData(gcmBuilder, field.getKey(), field.getValue());
+            }
+
+            message = gcmBuilder.build();
+            gcmMessage = message;
+        }
+        return message;
+    }
+
+    private static void addData(Message.Builder gcmBuilder, String key, Object value) {
+        if (value != null) {
+            gcmBuilder.addData(key, String.valueOf(value));
+        }
     }
-}
\ No newline at end of file
+}
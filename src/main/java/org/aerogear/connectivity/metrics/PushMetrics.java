@@ -0,0 +1,99 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.aerogear.connectivity.message.sender.PushNetwork;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics of the sender, registration and cache layers. Timers and meters are cheap to update
+ * (no lock on the hot path), gauges are only evaluated when they are read. All metrics are exposed
+ * as MBeans in the <code>org.aerogear.push</code> JMX domain, and by the <code>/metrics</code> resource.
+ */
+@ApplicationScoped
+public class PushMetrics {
+
+    public static final String JMX_DOMAIN = "org.aerogear.push";
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private JmxReporter jmxReporter;
+
+    @PostConstruct
+    public void startJmxReporter() {
+        jmxReporter = JmxReporter.forRegistry(registry).inDomain(JMX_DOMAIN).build();
+        jmxReporter.start();
+    }
+
+    @PreDestroy
+    public void stopJmxReporter() {
+        jmxReporter.stop();
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public Timer timer(String name, String... names) {
+        return registry.timer(MetricRegistry.name(name, names));
+    }
+
+    public Meter meter(String name, String... names) {
+        return registry.meter(MetricRegistry.name(name, names));
+    }
+
+    /**
+     * Registers the gauge, replacing a gauge of the same name (e.g. of a re-created bean).
+     */
+    public <T> void gauge(Gauge<T> gauge, String name, String... names) {
+        final String metricName = MetricRegistry.name(name, names);
+        registry.remove(metricName);
+        registry.register(metricName, gauge);
+    }
+
+    /**
+     * The lower case name of the network, as used in metric names (e.g. <code>sender.ios.fanout</code>).
+     */
+    public static String name(PushNetwork network) {
+        return network.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The ratio of hits to all lookups (NaN, before the first lookup).
+     */
+    public static Gauge<Double> hitRatio(final AtomicLong hits, final AtomicLong misses) {
+        return new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                final long hitCount = hits.get();
+                return Ratio.of(hitCount, hitCount + misses.get());
+            }
+        };
+    }
+}
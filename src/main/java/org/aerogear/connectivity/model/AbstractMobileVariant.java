@@ -20,6 +20,7 @@ package org.aerogear.connectivity.model;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.DiscriminatorColumn;
 import javax.persistence.DiscriminatorType;
@@ -31,8 +32,11 @@ import javax.persistence.OneToMany;
 
 import org.aerogear.connectivity.api.MobileVariant;
 import org.aerogear.connectivity.jpa.PersistentObject;
+import org.codehaus.jackson.annotate.JsonIgnore;
 
 @Entity
+// read-mostly, the subclasses (iOS, Android, SimplePush) share the setting:
+@Cacheable
 @DiscriminatorColumn(name = "TYPE", discriminatorType = DiscriminatorType.STRING)
 @Inheritance(strategy = InheritanceType.JOINED)
 public  class AbstractMobileVariant extends PersistentObject implements MobileVariant {
@@ -45,8 +49,10 @@ public  class AbstractMobileVariant extends PersistentObject implements MobileVa
     @Column
     private String variantID;
     
-    // TODO: let's do LAZY
-    @OneToMany(fetch=FetchType.EAGER)
+    // can be millions: never loaded as part of the variant, the senders query the tokens.
+    // The link is owned by the instance (foreign key on the instance table), on delete the
+    // services remove the instances with a bulk DELETE
+    @OneToMany(mappedBy="mobileVariant", fetch=FetchType.LAZY)
     private Set<MobileVariantInstanceImpl> instances = new HashSet<MobileVariantInstanceImpl>();
 
     public String getName() {
@@ -66,6 +72,7 @@ public  class AbstractMobileVariant extends PersistentObject implements MobileVa
     }
 
     @Override
+    @JsonIgnore
     public Set<MobileVariantInstanceImpl> getInstances() {
        return this.instances;
     }
@@ -17,17 +17,34 @@
 
 package org.aerogear.connectivity.model;
 
+import java.util.Date;
+
 import javax.persistence.Entity;
 import javax.persistence.Column;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
 
 import org.aerogear.connectivity.api.MobileVariantInstance;
 import org.aerogear.connectivity.jpa.PersistentObject;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.hibernate.annotations.Index;
 
 @Entity
+// one registration per device token and variant:
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"mobileVariant_id", "deviceToken"}))
+@org.hibernate.annotations.Table(appliesTo = "MobileVariantInstanceImpl",
+        indexes = @Index(name = "IDX_INSTANCE_VARIANT_ALIAS", columnNames = {"mobileVariant_id", "alias"}))
 public class MobileVariantInstanceImpl extends PersistentObject implements MobileVariantInstance {
     private static final long serialVersionUID = 7177135979544758234L;
 
     @Column
+    @Index(name = "IDX_INSTANCE_DEVICE_TOKEN")
     private String deviceToken;
     @Column
     private String deviceType;
@@ -40,6 +57,16 @@ public class MobileVariantInstanceImpl extends PersistentObject implements Mobil
     @Column
     private String category;
 
+    // the instance owns the link: registering a device is a single insert
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "mobileVariant_id")
+    private AbstractMobileVariant mobileVariant;
+
+    // the last registration of the device, newer than a Push Network's report of the token as inactive:
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column
+    private Date lastRegistered;
+
     
    public String getDeviceToken() {
       return this.deviceToken;
@@ -90,4 +117,33 @@ public class MobileVariantInstanceImpl extends PersistentObject implements Mobil
    public void setCategory(final String category) {
        this.category = category;
    }
+
+    @JsonIgnore
+    public AbstractMobileVariant getMobileVariant() {
+        return this.mobileVariant;
+    }
+
+    public void setMobileVariant(final AbstractMobileVariant mobileVariant) {
+        this.mobileVariant = mobileVariant;
+    }
+
+    /**
+     * When the device registered (or updated its registration) the last time; <code>null</code> for
+     * installations that were registered before this was recorded.
+     */
+    @JsonIgnore
+    public Date getLastRegistered() {
+        return this.lastRegistered;
+    }
+
+    public void setLastRegistered(final Date lastRegistered) {
+        this.lastRegistered = lastRegistered;
+    }
+
+    @PrePersist
+    void registered() {
+        if (this.lastRegistered == null) {
+            this.lastRegistered = new Date();
+        }
+    }
 }
@@ -20,6 +20,8 @@ package org.aerogear.connectivity.model;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -29,6 +31,7 @@ import javax.validation.constraints.NotNull;
 import org.aerogear.connectivity.jpa.PersistentObject;
 
 @Entity
+@Cacheable
 public class PushApplication extends PersistentObject {
     private static final long serialVersionUID = 6507691362454032282L;
 
@@ -41,16 +44,13 @@ public class PushApplication extends PersistentObject {
     @Column
     private String pushApplicationID;
 
-    // TODO: let's do LAZY
-    @OneToMany(fetch=FetchType.EAGER)
+    @OneToMany(fetch=FetchType.LAZY, cascade=CascadeType.DETACH)
     private Set<iOSVariant> iOSApps = new HashSet<iOSVariant>();
 
-    // TODO: let's do LAZY
-    @OneToMany(fetch=FetchType.EAGER)
+    @OneToMany(fetch=FetchType.LAZY, cascade=CascadeType.DETACH)
     private Set<AndroidVariant> androidApps = new HashSet<AndroidVariant>();
     
-    // TODO: let's do LAZY
-    @OneToMany(fetch=FetchType.EAGER)
+    @OneToMany(fetch=FetchType.LAZY, cascade=CascadeType.DETACH)
     private Set<SimplePushVariant> simplePushApps = new HashSet<SimplePushVariant>();
     
     
@@ -36,6 +36,17 @@ public class iOSVariant extends AbstractMobileVariant {
     @Column(name = "CERT")
     @NotNull
     private byte[] certificate;
+
+    // APNs connection settings; null means the default (sandbox, one connection, library reconnect policy):
+    @Column
+    private Boolean production;
+
+    @Column
+    private Integer connections;
+
+    // NEVER, EVERY_HALF_HOUR or EVERY_NOTIFICATION
+    @Column
+    private String reconnectPolicy;
     
     public String getPassphrase() {
         return this.passphrase;
@@ -52,4 +63,28 @@ public class iOSVariant extends AbstractMobileVariant {
     public void setCertificate(byte[] cert) {
         this.certificate = cert;
     }
+
+    public Boolean getProduction() {
+        return production;
+    }
+
+    public void setProduction(Boolean production) {
+        this.production = production;
+    }
+
+    public Integer getConnections() {
+        return connections;
+    }
+
+    public void setConnections(Integer connections) {
+        this.connections = connections;
+    }
+
+    public String getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    public void setReconnectPolicy(String reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
 }
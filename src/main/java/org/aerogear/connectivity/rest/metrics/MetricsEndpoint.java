@@ -0,0 +1,108 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.aerogear.connectivity.rest.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.aerogear.connectivity.metrics.PushMetrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * A snapshot of all metrics, by name. Rates are per second, durations in milliseconds.
+ */
+@Stateless
+@Path("/metrics")
+public class MetricsEndpoint {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Inject private PushMetrics pushMetrics;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> metrics() {
+        final MetricRegistry registry = pushMetrics.getRegistry();
+        final Map<String, Object> metrics = new TreeMap<String, Object>();
+
+        putGauges(registry, metrics);
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            final Map<String, Object> values = new LinkedHashMap<String, Object>();
+            values.put("count", entry.getValue().getCount());
+            putSnapshot(values, entry.getValue().getSnapshot(), 1);
+            metrics.put(entry.getKey(), values);
+        }
+        for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+            metrics.put(entry.getKey(), rates(entry.getValue()));
+        }
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            final Map<String, Object> values = rates(entry.getValue());
+            putSnapshot(values, entry.getValue().getSnapshot(), NANOS_PER_MILLI);
+            metrics.put(entry.getKey(), values);
+        }
+        return metrics;
+    }
+
+    // the registry hands out the gauges as raw types:
+    @SuppressWarnings("rawtypes")
+    private void putGauges(MetricRegistry registry, Map<String, Object> metrics) {
+        for (Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getValue());
+        }
+    }
+
+    private Map<String, Object> rates(Metered metered) {
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("count", metered.getCount());
+        values.put("mean_rate", metered.getMeanRate());
+        values.put("m1_rate", metered.getOneMinuteRate());
+        values.put("m5_rate", metered.getFiveMinuteRate());
+        values.put("m15_rate", metered.getFifteenMinuteRate());
+        return values;
+    }
+
+    private void putSnapshot(Map<String, Object> values, Snapshot snapshot, double divisor) {
+        values.put("min", snapshot.getMin() / divisor);
+        values.put("max", snapshot.getMax() / divisor);
+        values.put("mean", snapshot.getMean() / divisor);
+        values.put("p50", snapshot.getMedian() / divisor);
+        values.put("p75", snapshot.get75thPercentile() / divisor);
+        values.put("p95", snapshot.get95thPercentile() / divisor);
+        values.put("p99", snapshot.get99thPercentile() / divisor);
+        values.put("p999", snapshot.get999thPercentile() / divisor);
+    }
+}
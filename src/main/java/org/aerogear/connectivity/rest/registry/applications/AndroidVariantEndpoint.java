@@ -91,7 +91,7 @@ public class AndroidVariantEndpoint {
    @GET
    @Produces(MediaType.APPLICATION_JSON)
    public Response listAllAndroidVariationsForPushApp(@PathParam("pushAppID") String pushAppID)  {
-       return Response.ok(pushAppService.findByPushApplicationID(pushAppID)).build();
+       return Response.ok(pushAppService.findByPushApplicationIDWithVariants(pushAppID)).build();
    }
    @GET
    @Path("/{androidID}")
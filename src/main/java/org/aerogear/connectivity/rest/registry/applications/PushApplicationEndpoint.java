@@ -80,7 +80,7 @@ public class PushApplicationEndpoint {
     @Path("/{pushAppID}")
     @Produces(MediaType.APPLICATION_JSON)
     public Response findById(@PathParam("pushAppID") String id) {
-        PushApplication pushApp = pushAppService.findByPushApplicationID(id);
+        PushApplication pushApp = pushAppService.findByPushApplicationIDWithVariants(id);
         
         if (pushApp!=null) {
             return Response.ok(pushApp).build();
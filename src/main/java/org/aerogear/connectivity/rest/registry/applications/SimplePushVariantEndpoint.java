@@ -90,7 +90,7 @@ public class SimplePushVariantEndpoint {
    @GET
    @Produces(MediaType.APPLICATION_JSON)
    public Response listAllSimplePushVariationsForPushApp(@PathParam("pushAppID") String pushAppID)  {
-       return Response.ok(pushAppService.findByPushApplicationID(pushAppID)).build();
+       return Response.ok(pushAppService.findByPushApplicationIDWithVariants(pushAppID)).build();
    }
 
    @GET
@@ -43,6 +43,8 @@ import org.aerogear.connectivity.service.PushApplicationService;
 import org.aerogear.connectivity.service.iOSVariantService;
 import org.jboss.resteasy.annotations.providers.multipart.MultipartForm;
 
+import com.notnoop.apns.ReconnectPolicy;
+
 @Stateless
 @TransactionAttribute
 @Path("/applications/{pushAppID}/iOS")
@@ -85,6 +87,9 @@ public class iOSVariantEndpoint {
         iOSVariation.setDescription(form.getDescription());
         iOSVariation.setPassphrase(form.getPassphrase());
         iOSVariation.setCertificate(form.getCertificate());
+        if (! applyConnectionSettings(form, iOSVariation)) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
         
         // manually set the ID:
         iOSVariation.setVariantID(UUID.randomUUID().toString());
@@ -101,7 +106,7 @@ public class iOSVariantEndpoint {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response listAlliOSVariationsForPushApp(@PathParam("pushAppID") String pushAppID)  {
-        return Response.ok(pushAppService.findByPushApplicationID(pushAppID)).build();
+        return Response.ok(pushAppService.findByPushApplicationIDWithVariants(pushAppID)).build();
     }
 
     @GET
@@ -139,6 +144,9 @@ public class iOSVariantEndpoint {
             iOSVariation.setDescription(updatedForm.getDescription());
             iOSVariation.setPassphrase(updatedForm.getPassphrase());
             iOSVariation.setCertificate(updatedForm.getCertificate());
+            if (! applyConnectionSettings(updatedForm, iOSVariation)) {
+                return Response.status(Status.BAD_REQUEST).build();
+            }
 
             iOSVariantService.updateiOSVariant(iOSVariation);
             return Response.noContent().build();
@@ -159,5 +167,33 @@ public class iOSVariantEndpoint {
         }
         return Response.status(Status.NOT_FOUND).build();
     }
-  
-}
\ No newline at end of file
+
+    /**
+     * Applies the (optional) APNs connection settings of the form; settings that are not
+     * submitted stay unchanged. Returns false for invalid values.
+     */
+    private boolean applyConnectionSettings(iOSApplicationUploadForm form, iOSVariant iOSVariation) {
+        if (form.getProduction() != null) {
+            iOSVariation.setProduction(Boolean.valueOf(form.getProduction()));
+        }
+        if (form.getConnections() != null) {
+            try {
+                final int connections = Integer.parseInt(form.getConnections());
+                if (connections < 1) {
+                    return false;
+                }
+                iOSVariation.setConnections(connections);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        if (form.getReconnectPolicy() != null) {
+            try {
+                iOSVariation.setReconnectPolicy(ReconnectPolicy.Provided.valueOf(form.getReconnectPolicy()).name());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
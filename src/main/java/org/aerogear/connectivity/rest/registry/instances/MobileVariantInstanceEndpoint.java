@@ -17,13 +17,19 @@
 
 package org.aerogear.connectivity.rest.registry.instances;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -31,14 +37,24 @@ import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import org.aerogear.connectivity.api.MobileVariant;
+import org.aerogear.connectivity.cdi.interceptor.Timed;
+import org.aerogear.connectivity.config.Configuration;
 import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
+import org.aerogear.connectivity.service.MobileVariantInstanceBulkService;
 import org.aerogear.connectivity.service.MobileVariantInstanceService;
 import org.aerogear.connectivity.service.MobileVariantService;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.MappingJsonFactory;
+import org.hibernate.exception.ConstraintViolationException;
 
 @Stateless
 @Path("/registry/device")
@@ -48,9 +64,15 @@ public class MobileVariantInstanceEndpoint
     @Inject private Logger logger;
     @Inject private MobileVariantInstanceService mobileApplicationInstanceService;
     @Inject private MobileVariantService mobileApplicationService;
+    @Inject private MobileVariantInstanceBulkService mobileVariantInstanceBulkService;
+
+    private static final int BULK_CHUNK_SIZE = Configuration.getInt("aerogear.push.registration.batch", 500);
+    private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Timed("registry.device.register")
     public Response registerInstallation(
             @HeaderParam("ag-mobile-variant") String mobileVariantID, 
             MobileVariantInstanceImpl entity) {
@@ -67,63 +89,148 @@ public class MobileVariantInstanceEndpoint
             return Response.status(Status.NOT_FOUND).build();
         }
 
-        // look up all instances for THIS variant:
-        List<MobileVariantInstanceImpl> instances = findInstanceByDeviceToken(mobileApp.getInstances(), entity.getDeviceToken());
-        if (instances.isEmpty()) {
-            // store the installation:
-            entity = mobileApplicationInstanceService.addMobileVariantInstance(entity);
-            // add installation to the matching variant
-            mobileApplicationService.addInstance(mobileApp, entity);
-        } else {
+        // insert, or update the installation of THIS variant with the device token, in its own transaction:
+        boolean created;
+        try {
+            created = mobileVariantInstanceBulkService.registerMobileVariantInstance(mobileVariantID, entity);
+        } catch (EJBException e) {
+            if (! isConstraintViolation(e)) {
+                throw e;
+            }
+            // a concurrent registration of the same token inserted it first (unique constraint), update that one:
+            created = mobileVariantInstanceBulkService.registerMobileVariantInstance(mobileVariantID, entity);
+        }
+        if (! created) {
             logger.info("Updating received metadata for MobileVariantInstance");
+        }
 
-            // should be impossible
-            if (instances.size()>1) {
-                logger.severe("Too many registration for one installation");
+        return Response.ok().build();
+   }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // update the entity:
-            entity = this.updateMobileApplicationInstance(instances.get(0), entity);
+    /**
+     * Registers many installations of one variant at once, e.g. when migrating from another provider.
+     * The body is either a JSON array of installations or newline delimited JSON (one installation
+     * per line). It is read as a stream and stored in chunks of <code>aerogear.push.registration.batch</code>
+     * installations, every chunk in its own transaction.
+     */
+    @POST
+    @Path("bulk")
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson"})
+    @Produces(MediaType.APPLICATION_JSON)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Timed("registry.device.bulk")
+    public Response registerInstallations(
+            @HeaderParam("ag-mobile-variant") String mobileVariantID,
+            InputStream installations) {
+
+        if (mobileVariantID == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        MobileVariant mobileApp = mobileApplicationService.findByVariantID(mobileVariantID);
+        if (mobileApp == null) {
+            logger.severe("Could not find Mobile Variant!");
+            return Response.status(Status.NOT_FOUND).build();
         }
 
-        return Response.ok().build();
-   }
-    
-    // TODO: move to JQL
-    private List<MobileVariantInstanceImpl> findInstanceByDeviceToken(Set<MobileVariantInstanceImpl> instances, String deviceToken) {
-        final List<MobileVariantInstanceImpl> instancesWithToken = new ArrayList<MobileVariantInstanceImpl>();
-
-        for (MobileVariantInstanceImpl instance : instances) {
-            if (instance.getDeviceToken().equals(deviceToken))
-                instancesWithToken.add(instance);
+        final List<RegistrationResult> results = new ArrayList<RegistrationResult>();
+        final List<MobileVariantInstanceImpl> chunk = new ArrayList<MobileVariantInstanceImpl>(BULK_CHUNK_SIZE);
+        final List<Integer> chunkIndexes = new ArrayList<Integer>(BULK_CHUNK_SIZE);
+        int index = 0;
+        try {
+            final JsonParser parser = JSON_FACTORY.createJsonParser(installations);
+            JsonToken token = parser.nextToken();
+
+            // a JSON array, or a sequence of root-level objects (NDJSON):
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                final MobileVariantInstanceImpl entity = parser.readValueAs(MobileVariantInstanceImpl.class);
+                if (entity.getDeviceToken() == null) {
+                    results.add(new RegistrationResult(index, null, RegistrationResult.REJECTED));
+                } else {
+                    chunk.add(entity);
+                    chunkIndexes.add(index);
+                    if (chunk.size() == BULK_CHUNK_SIZE) {
+                        registerChunk(mobileVariantID, chunk, chunkIndexes, results);
+                    }
+                }
+                index++;
+                token = parser.nextToken();
+            }
+            if (token != null && token != JsonToken.END_ARRAY) {
+                throw new JsonParseException("Expected an installation, but got " + token, parser.getCurrentLocation());
+            }
+        } catch (IOException e) {
+            logger.severe("Could not read the installations of the bulk registration: " + e.getMessage());
+            // the chunks that were stored so far are reported:
+            return Response.status(Status.BAD_REQUEST).entity(results).build();
         }
+        registerChunk(mobileVariantID, chunk, chunkIndexes, results);
 
-        return instancesWithToken;
+        return Response.ok(results).build();
     }
 
-    private MobileVariantInstanceImpl updateMobileApplicationInstance(MobileVariantInstanceImpl toUpdate, MobileVariantInstanceImpl postedVariant) {
-        toUpdate.setCategory(postedVariant.getCategory());
-        toUpdate.setDeviceToken(postedVariant.getDeviceToken());
-        toUpdate.setAlias(postedVariant.getAlias());
-        toUpdate.setDeviceType(postedVariant.getDeviceType());
-        toUpdate.setMobileOperatingSystem(postedVariant.getMobileOperatingSystem());
-        toUpdate.setOsVersion(postedVariant.getOsVersion());
+    private void registerChunk(String mobileVariantID, List<MobileVariantInstanceImpl> chunk, List<Integer> chunkIndexes, List<RegistrationResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<String> created;
+        try {
+            created = storeChunk(mobileVariantID, chunk);
+        } catch (EJBException e) {
+            // only this chunk is rolled back: the chunks before are committed, and all are reported
+            logger.severe("Could not store a chunk of the bulk registration: " + e.getMessage());
+            created = null;
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            final String deviceToken = chunk.get(i).getDeviceToken();
+            final String status;
+            if (created == null) {
+                status = RegistrationResult.REJECTED;
+            } else {
+                // a token repeated in the chunk is created once, and then updated:
+                status = created.remove(deviceToken) ? RegistrationResult.CREATED : RegistrationResult.UPDATED;
+            }
+            results.add(new RegistrationResult(chunkIndexes.get(i), deviceToken, status));
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
 
-        //update
-        return mobileApplicationInstanceService.updateMobileVariantInstance(toUpdate);
+    private Set<String> storeChunk(String mobileVariantID, List<MobileVariantInstanceImpl> chunk) {
+        try {
+            return mobileVariantInstanceBulkService.registerMobileVariantInstances(mobileVariantID, chunk);
+        } catch (EJBException e) {
+            if (! isConstraintViolation(e)) {
+                throw e;
+            }
+            // a concurrent registration inserted one of the tokens first, they are updated now:
+            return mobileVariantInstanceBulkService.registerMobileVariantInstances(mobileVariantID, chunk);
+        }
     }
 
     @DELETE
     @Path("{token}")
     @Consumes(MediaType.APPLICATION_JSON)
+    @Timed("registry.device.unregister")
     public Response unregisterInstallations(
             @HeaderParam("ag-mobile-variant") String mobileVariantID, 
             @PathParam("token") String token) {
 
-        // there can be multiple regs.........
-        List<MobileVariantInstanceImpl> instances = mobileApplicationInstanceService.findMobileVariantInstancesByToken(token);
-        // delete them:
-        mobileApplicationInstanceService.removeMobileVariantInstances(instances);
+        // only the registration of the given variant; without the header, the token
+        // is removed for all variants (there can be multiple regs):
+        mobileApplicationInstanceService.removeMobileVariantInstancesByTokens(mobileVariantID, Collections.singleton(token));
 
         return Response.noContent().build();
    }
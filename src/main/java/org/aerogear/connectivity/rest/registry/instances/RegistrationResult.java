@@ -0,0 +1,53 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.rest.registry.instances;
+
+/**
+ * Outcome of one installation of a bulk registration.
+ */
+public class RegistrationResult {
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String REJECTED = "rejected";
+
+    private final int index;
+    private final String deviceToken;
+    private final String status;
+
+    public RegistrationResult(int index, String deviceToken, String status) {
+        this.index = index;
+        this.deviceToken = deviceToken;
+        this.status = status;
+    }
+
+    /**
+     * Position of the installation in the submitted array (or stream).
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getDeviceToken() {
+        return deviceToken;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
@@ -17,24 +17,34 @@
 
 package org.aerogear.connectivity.rest.sender;
 
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
 
+import org.aerogear.connectivity.cdi.interceptor.Timed;
+import org.aerogear.connectivity.message.dispatch.PushDispatcher;
+import org.aerogear.connectivity.message.job.PushJob;
+import org.aerogear.connectivity.message.job.PushJobRegistry;
+import org.aerogear.connectivity.message.sender.APNsPushNotificationSender;
+import org.aerogear.connectivity.message.sender.UnifiedPushMessage;
 import org.aerogear.connectivity.model.PushApplication;
 import org.aerogear.connectivity.rest.sender.messages.BroadcastMessage;
 import org.aerogear.connectivity.rest.sender.messages.SelectiveSendMessage;
 import org.aerogear.connectivity.service.PushApplicationService;
-import org.aerogear.connectivity.service.SenderService;
 
 @Stateless
 @Path("/sender")
@@ -43,41 +53,85 @@ public class PushNotificationSenderEndpoint {
 
     @Inject private Logger logger;
     @Inject private PushApplicationService pushApplicationService;
-    @Inject private SenderService senderService;
+    @Inject private PushDispatcher pushDispatcher;
+    @Inject private PushJobRegistry pushJobRegistry;
     
     @POST
     @Path("/broadcast/{pushApplicationID}")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response broadcast(final BroadcastMessage message, @PathParam("pushApplicationID") String pushApplicationID) {
+    @Timed("sender.broadcast.submit")
+    public Response broadcast(final BroadcastMessage message, @PathParam("pushApplicationID") String pushApplicationID,
+            @Context UriInfo uriInfo) {
 
-        final PushApplication pushApplication = pushApplicationService.findByPushApplicationID(pushApplicationID);
+        final PushApplication pushApplication = pushApplicationService.findByPushApplicationIDWithVariants(pushApplicationID);
         if (pushApplication == null) {
           return Response.status(Status.NOT_FOUND).build();
         }
+        if (exceedsAPNsPayloadLimit(pushApplication, message)) {
+            return apnsPayloadTooLong();
+        }
 
-        // submitted to @Async EJB:
-        senderService.broadcast(pushApplication, message);
+        // submitted to the dispatch queue:
+        final PushJob job = pushDispatcher.broadcast(pushApplication, message);
         logger.info("Message submitted to PushNetworks");
 
-        return Response.status(Status.OK)
-                .entity("Job submitted").build();
+        return jobSubmitted(job, uriInfo);
     }
 
     @POST
     @Path("/selected/{pushApplicationID}")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response selectedSender(final SelectiveSendMessage message, @PathParam("pushApplicationID") String pushApplicationID) {
-        final PushApplication pushApplication = pushApplicationService.findByPushApplicationID(pushApplicationID);
+    @Timed("sender.selected.submit")
+    public Response selectedSender(final SelectiveSendMessage message, @PathParam("pushApplicationID") String pushApplicationID,
+            @Context UriInfo uriInfo) {
+        final PushApplication pushApplication = pushApplicationService.findByPushApplicationIDWithVariants(pushApplicationID);
 
         if (pushApplication == null) {
             return Response.status(Status.NOT_FOUND).build();
         }
+        if (exceedsAPNsPayloadLimit(pushApplication, message.getMessage())) {
+            return apnsPayloadTooLong();
+        }
 
-        // submitted to @Async EJB:
-        senderService.sendToAliases(pushApplication, message);
+        // submitted to the dispatch queue:
+        final PushJob job = pushDispatcher.sendToAliases(pushApplication, message);
         logger.info("Message submitted to PushNetworks");
 
+        return jobSubmitted(job, uriInfo);
+    }
+
+    /**
+     * The live progress of a submitted message: the number of device tokens queued, sent, failed
+     * and pruned, per Push Network and per variant.
+     */
+    @GET
+    @Path("/jobs/{jobID}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response job(@PathParam("jobID") String jobID) {
+        final PushJob job = pushJobRegistry.get(jobID);
+        if (job == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.ok(job).build();
+    }
+
+    private Response jobSubmitted(PushJob job, UriInfo uriInfo) {
         return Response.status(Status.OK)
-                .entity("Job submitted").build();
+                .location(uriInfo.getBaseUriBuilder().path(PushNotificationSenderEndpoint.class).path("jobs").path(job.getId()).build())
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(job).build();
+    }
+
+    // rejected up front, instead of failing the delivery for every iOS variant:
+    private boolean exceedsAPNsPayloadLimit(PushApplication pushApplication, Map<String, ? extends Object> message) {
+        if (message == null || pushApplication.getIOSApps().isEmpty()) {
+            return false;
+        }
+        return new UnifiedPushMessage(message).getAPNsPayload().length > APNsPushNotificationSender.MAX_PAYLOAD_LENGTH;
+    }
+
+    private Response apnsPayloadTooLong() {
+        return Response.status(Status.BAD_REQUEST)
+                .entity("The APNs payload exceeds " + APNsPushNotificationSender.MAX_PAYLOAD_LENGTH + " bytes").build();
     }
 }
@@ -29,6 +29,9 @@ public class iOSApplicationUploadForm {
     private byte[] certificate;
     private String name;
     private String description;
+    private String production;
+    private String connections;
+    private String reconnectPolicy;
 
     public String getName() {
         return name;
@@ -65,5 +68,32 @@ public class iOSApplicationUploadForm {
     public void setCertificate(byte[] data) {
         this.certificate = data;
     }
+
+    public String getProduction() {
+        return production;
+    }
+
+    @FormParam("production")
+    public void setProduction(String production) {
+        this.production = production;
+    }
+
+    public String getConnections() {
+        return connections;
+    }
+
+    @FormParam("connections")
+    public void setConnections(String connections) {
+        this.connections = connections;
+    }
+
+    public String getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    @FormParam("reconnectPolicy")
+    public void setReconnectPolicy(String reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
  
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.service;
+
+import java.util.List;
+import java.util.Set;
+
+import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
+
+public interface MobileVariantInstanceBulkService {
+
+    /**
+     * Registers (or updates) the given installations for the variant, in one transaction.
+     * Returns the device tokens that were newly registered, all others were updated.
+     */
+    Set<String> registerMobileVariantInstances(String variantID, List<MobileVariantInstanceImpl> instances);
+
+    /**
+     * Registers (or updates) one installation for the variant, in its own transaction.
+     * Returns <code>true</code> if the device token was newly registered.
+     */
+    boolean registerMobileVariantInstance(String variantID, MobileVariantInstanceImpl instance);
+}
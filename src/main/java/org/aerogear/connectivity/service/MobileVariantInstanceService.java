@@ -17,6 +17,7 @@
 
 package org.aerogear.connectivity.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
@@ -26,5 +27,17 @@ public interface MobileVariantInstanceService {
     MobileVariantInstanceImpl addMobileVariantInstance(MobileVariantInstanceImpl mobileApplicationInstance);
     MobileVariantInstanceImpl updateMobileVariantInstance(MobileVariantInstanceImpl mobileApplicationInstance);
     List<MobileVariantInstanceImpl> findMobileVariantInstancesByToken(String token);
+    MobileVariantInstanceImpl findMobileVariantInstanceByVariantIDAndToken(String variantID, String token);
     void removeMobileVariantInstances(List<MobileVariantInstanceImpl> instances);
+
+    /**
+     * Removes the installations of the variant (or of all variants, if <code>variantID</code> is <code>null</code>)
+     * that have one of the device tokens, with set-based DELETE statements. Returns the number of removed installations.
+     */
+    int removeMobileVariantInstancesByTokens(String variantID, Collection<String> deviceTokens);
+
+    /**
+     * Removes all installations of the variant, with one DELETE statement.
+     */
+    int removeMobileVariantInstancesForVariant(String variantID);
 }
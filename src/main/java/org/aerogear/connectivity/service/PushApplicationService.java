@@ -29,6 +29,7 @@ public interface PushApplicationService {
     PushApplication addPushApplication(PushApplication pushApp);
     List<PushApplication> findAllPushApplications();
     PushApplication findByPushApplicationID(String pushApplicationID);
+    PushApplication findByPushApplicationIDWithVariants(String pushApplicationID);
     PushApplication updatePushApplication(PushApplication pushApp);
     void removePushApplication(PushApplication pushApp);
     
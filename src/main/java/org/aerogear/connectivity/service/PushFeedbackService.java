@@ -0,0 +1,46 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Applies the feedback of the Push Networks to the registered installations.
+ */
+public interface PushFeedbackService {
+
+    /**
+     * Removes the installations of the variant, that use one of the given (no longer valid) device tokens.
+     * Returns the number of removed installations.
+     */
+    int removeInactiveDeviceTokens(String variantID, Collection<String> deviceTokens);
+
+    /**
+     * Removes the installations of the variant, that use one of the device tokens (key) that the Push Network
+     * reported as inactive at the given date. Installations that registered again after that date are kept.
+     * Returns the number of removed installations.
+     */
+    int removeInactiveDeviceTokens(String variantID, Map<String, Date> inactiveSince);
+
+    /**
+     * Replaces the device tokens of the variant (key) with their canonical value.
+     */
+    void updateDeviceTokens(String variantID, Map<String, String> canonicalDeviceTokens);
+}
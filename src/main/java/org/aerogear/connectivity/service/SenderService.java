@@ -19,11 +19,13 @@ package org.aerogear.connectivity.service;
 
 import java.util.Map;
 
+import org.aerogear.connectivity.message.job.PushJob;
+import org.aerogear.connectivity.message.sender.PushNetwork;
 import org.aerogear.connectivity.model.PushApplication;
 import org.aerogear.connectivity.rest.sender.messages.SelectiveSendMessage;
 
 public interface SenderService {
 
-    void broadcast(PushApplication pushApplication, Map<String, ? extends Object> payload);
-    void sendToAliases(PushApplication pushApplication, SelectiveSendMessage message);
+    void broadcast(PushApplication pushApplication, PushNetwork network, Map<String, ? extends Object> payload, PushJob pushJob);
+    void sendToAliases(PushApplication pushApplication, PushNetwork network, SelectiveSendMessage message, PushJob pushJob);
 }
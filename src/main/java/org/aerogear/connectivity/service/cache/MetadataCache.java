@@ -0,0 +1,200 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.service.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.aerogear.connectivity.api.MobileVariant;
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.metrics.PushMetrics;
+import org.aerogear.connectivity.model.PushApplication;
+
+import com.codahale.metrics.Gauge;
+
+/**
+ * Bounded (LRU) cache of the push applications (with their variants) and of the variants,
+ * for the send and registration paths. The entities are shared by all threads: the services
+ * detach them from the (extended) persistence context that loaded them, before caching them.
+ * They must not be modified.
+ *
+ * The services invalidate the entries on every write. The eviction is repeated once the writing
+ * transaction has completed, and a value that was loaded before an invalidation is not cached
+ * (see {@link #currentGeneration()}), so that readers do not see the old values afterwards.
+ */
+@ApplicationScoped
+public class MetadataCache {
+
+    private static final int MAX_ENTRIES = Configuration.getInt("aerogear.push.metadata.cache.size", 1000);
+
+    private final Map<String, PushApplication> pushApplications = lruMap();
+    private final Map<String, MobileVariant> variants = lruMap();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Resource(lookup = "java:comp/TransactionSynchronizationRegistry")
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    @Inject
+    private PushMetrics metrics;
+
+    @PostConstruct
+    public void registerMetrics() {
+        metrics.gauge(PushMetrics.hitRatio(hits, misses), "cache", "metadata", "hit_ratio");
+        metrics.gauge(new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getSize();
+            }
+        }, "cache", "metadata", "size");
+    }
+
+    public PushApplication getPushApplication(String pushApplicationID) {
+        return count(pushApplications.get(pushApplicationID));
+    }
+
+    public MobileVariant getVariant(String variantID) {
+        return count(variants.get(variantID));
+    }
+
+    /**
+     * Has to be read before loading a value from the database, and passed to the <code>put</code> methods.
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    public void putPushApplication(PushApplication pushApplication, long loadedInGeneration) {
+        if (pushApplication != null) {
+            synchronized (pushApplications) {
+                if (loadedInGeneration == generation.get()) {
+                    pushApplications.put(pushApplication.getPushApplicationID(), pushApplication);
+                }
+            }
+        }
+    }
+
+    public void putVariant(MobileVariant variant, long loadedInGeneration) {
+        if (variant != null) {
+            synchronized (variants) {
+                if (loadedInGeneration == generation.get()) {
+                    variants.put(variant.getVariantID(), variant);
+                }
+            }
+        }
+    }
+
+    public void invalidatePushApplication(final String pushApplicationID) {
+        evictPushApplication(pushApplicationID);
+        afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictPushApplication(pushApplicationID);
+            }
+        });
+    }
+
+    /**
+     * Evicts the variant, and all push applications, since these contain the (old) variant as well.
+     */
+    public void invalidateVariant(final String variantID) {
+        evictVariant(variantID);
+        afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictVariant(variantID);
+            }
+        });
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        return pushApplications.size() + variants.size();
+    }
+
+    private void evictPushApplication(String pushApplicationID) {
+        synchronized (pushApplications) {
+            generation.incrementAndGet();
+            pushApplications.remove(pushApplicationID);
+        }
+    }
+
+    private void evictVariant(String variantID) {
+        synchronized (variants) {
+            generation.incrementAndGet();
+            variants.remove(variantID);
+        }
+        synchronized (pushApplications) {
+            generation.incrementAndGet();
+            pushApplications.clear();
+        }
+    }
+
+    private void afterCompletion(final Runnable eviction) {
+        if (transactionRegistry != null && transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private <T> T count(T value) {
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    @SuppressWarnings("serial")
+    private static <V> Map<String, V> lruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        });
+    }
+}
@@ -24,9 +24,17 @@ import javax.inject.Inject;
 import org.aerogear.connectivity.jpa.dao.AndroidVariantDao;
 import org.aerogear.connectivity.model.AndroidVariant;
 import org.aerogear.connectivity.service.AndroidVariantService;
+import org.aerogear.connectivity.service.MobileVariantInstanceService;
+import org.aerogear.connectivity.service.cache.MetadataCache;
 
 public class AndroidVariantServiceImpl implements AndroidVariantService {
 
+    @Inject
+    private MetadataCache metadataCache;
+
+    @Inject
+    private MobileVariantInstanceService mobileVariantInstanceService;
+
     @Inject
     private AndroidVariantDao androidApplicationDao;
 
@@ -48,11 +56,14 @@ public class AndroidVariantServiceImpl implements AndroidVariantService {
     @Override
     public AndroidVariant updateAndroidVariant(
             AndroidVariant androidApp) {
+        metadataCache.invalidateVariant(androidApp.getVariantID());
         return androidApplicationDao.update(androidApp);
     }
 
     @Override
     public void removeAndroidVariant(AndroidVariant androidApp) {
+        metadataCache.invalidateVariant(androidApp.getVariantID());
+        mobileVariantInstanceService.removeMobileVariantInstancesForVariant(androidApp.getVariantID());
         androidApplicationDao.delete(androidApp);
     }
 
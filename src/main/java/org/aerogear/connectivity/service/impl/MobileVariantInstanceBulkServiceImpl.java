@@ -0,0 +1,105 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.service.impl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+
+import org.aerogear.connectivity.jpa.dao.MobileVariantDao;
+import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.model.AbstractMobileVariant;
+import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
+import org.aerogear.connectivity.service.MobileVariantInstanceBulkService;
+
+/**
+ * Every chunk of a bulk registration is committed in its own transaction, so that a large
+ * import does not hit the TX timeout. The persistence context is extended and outlives the
+ * transaction, so it is flushed and cleared after every chunk, to keep it bounded.
+ */
+@Stateless
+public class MobileVariantInstanceBulkServiceImpl implements MobileVariantInstanceBulkService {
+
+    @Inject private MobileVariantDao mobileVariantDao;
+    @Inject private MobileVariantInstanceDao mobileVariantInstanceDao;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Set<String> registerMobileVariantInstances(String variantID, List<MobileVariantInstanceImpl> instances) {
+
+        final Set<String> deviceTokens = new HashSet<String>();
+        for (MobileVariantInstanceImpl instance : instances) {
+            deviceTokens.add(instance.getDeviceToken());
+        }
+
+        // one query for the already registered tokens of the chunk:
+        final Map<String, MobileVariantInstanceImpl> registered = new HashMap<String, MobileVariantInstanceImpl>();
+        for (MobileVariantInstanceImpl instance : mobileVariantInstanceDao.findByVariantIDAndDeviceTokens(variantID, deviceTokens)) {
+            registered.put(instance.getDeviceToken(), instance);
+        }
+
+        final AbstractMobileVariant variant = (AbstractMobileVariant) mobileVariantDao.findByVariantID(variantID);
+
+        final Set<String> created = new HashSet<String>();
+        for (MobileVariantInstanceImpl instance : instances) {
+            final MobileVariantInstanceImpl existing = registered.get(instance.getDeviceToken());
+            if (existing != null) {
+                // managed: written with the (batched) updates on commit
+                copyMetadata(instance, existing);
+            } else {
+                instance.setMobileVariant(variant);
+                // the id generated by an attempt that was rolled back, e.g. before a retry:
+                instance.setId(null);
+                mobileVariantInstanceDao.create(instance);
+                registered.put(instance.getDeviceToken(), instance);
+                created.add(instance.getDeviceToken());
+            }
+        }
+
+        // the inserts and updates of the chunk, before their entities are detached:
+        mobileVariantInstanceDao.flush();
+        mobileVariantInstanceDao.clear();
+
+        return created;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean registerMobileVariantInstance(String variantID, MobileVariantInstanceImpl instance) {
+        return ! registerMobileVariantInstances(variantID, Collections.singletonList(instance)).isEmpty();
+    }
+
+    private void copyMetadata(MobileVariantInstanceImpl from, MobileVariantInstanceImpl to) {
+        to.setCategory(from.getCategory());
+        to.setAlias(from.getAlias());
+        to.setDeviceType(from.getDeviceType());
+        to.setMobileOperatingSystem(from.getMobileOperatingSystem());
+        to.setOsVersion(from.getOsVersion());
+        // registered again, e.g. after a reinstall:
+        to.setLastRegistered(new Date());
+    }
+}
@@ -17,16 +17,23 @@
 
 package org.aerogear.connectivity.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
 
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.jpa.Batches;
 import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
 import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
 import org.aerogear.connectivity.service.MobileVariantInstanceService;
 
 public class MobileVariantInstanceServiceImpl implements MobileVariantInstanceService {
 
+    // max. number of tokens (or IDs) per DELETE statement:
+    private static final int DELETE_BATCH_SIZE = Configuration.getInt("aerogear.push.delete.batch", 500);
+
     @Inject
     private MobileVariantInstanceDao dao;
 
@@ -40,15 +47,37 @@ public class MobileVariantInstanceServiceImpl implements MobileVariantInstanceSe
         return dao.findByToken(token);
     }
 
+    @Override
+    public MobileVariantInstanceImpl findMobileVariantInstanceByVariantIDAndToken(
+            String variantID, String token) {
+        return dao.findByVariantIDAndDeviceToken(variantID, token);
+    }
+
     @Override
     public void removeMobileVariantInstances(
             List<MobileVariantInstanceImpl> instances) {
 
-        // uh... :)
-        
+        final List<String> ids = new ArrayList<String>(instances.size());
         for (MobileVariantInstanceImpl mobileApplicationInstance : instances) {
-            dao.delete(mobileApplicationInstance);
+            ids.add(mobileApplicationInstance.getId());
+        }
+        for (List<String> batch : Batches.of(ids, DELETE_BATCH_SIZE)) {
+            dao.deleteByIDs(batch);
+        }
+    }
+
+    @Override
+    public int removeMobileVariantInstancesByTokens(String variantID, Collection<String> deviceTokens) {
+        int removed = 0;
+        for (List<String> batch : Batches.of(deviceTokens, DELETE_BATCH_SIZE)) {
+            removed += dao.deleteByVariantIDAndDeviceTokens(variantID, batch);
         }
+        return removed;
+    }
+
+    @Override
+    public int removeMobileVariantInstancesForVariant(String variantID) {
+        return dao.deleteByVariantID(variantID);
     }
 
     @Override
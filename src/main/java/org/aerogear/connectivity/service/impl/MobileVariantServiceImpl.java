@@ -21,25 +21,45 @@ import javax.inject.Inject;
 
 import org.aerogear.connectivity.api.MobileVariant;
 import org.aerogear.connectivity.jpa.dao.MobileVariantDao;
+import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.model.AbstractMobileVariant;
 import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
 import org.aerogear.connectivity.service.MobileVariantService;
+import org.aerogear.connectivity.service.cache.MetadataCache;
 
 public class MobileVariantServiceImpl implements MobileVariantService {
 
     @Inject
     private MobileVariantDao mobileApplicationDao;
+
+    @Inject
+    private MobileVariantInstanceDao mobileVariantInstanceDao;
+
+    @Inject
+    private MetadataCache metadataCache;
     
     @Override
     public MobileVariant findByVariantID(String variantID) {
-        return mobileApplicationDao.findByVariantID(variantID);
+        MobileVariant variant = metadataCache.getVariant(variantID);
+        if (variant == null) {
+            final long generation = metadataCache.currentGeneration();
+            variant = mobileApplicationDao.findByVariantID(variantID);
+            if (variant != null) {
+                // shared by all threads: detached
+                mobileApplicationDao.detach(variant);
+                metadataCache.putVariant(variant, generation);
+            }
+        }
+        return variant;
     }
 
     @Override
     public void addInstance(MobileVariant mobileApp,
             MobileVariantInstanceImpl instance) {
         
-        mobileApp.getInstances().add(instance);
-        mobileApplicationDao.update(mobileApp);
+        // a single insert, the parent variant is not merged:
+        instance.setMobileVariant((AbstractMobileVariant) mobileApp);
+        mobileVariantInstanceDao.create(instance);
     }
 
 }
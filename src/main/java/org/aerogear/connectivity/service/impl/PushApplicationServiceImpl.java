@@ -27,12 +27,16 @@ import org.aerogear.connectivity.model.PushApplication;
 import org.aerogear.connectivity.model.SimplePushVariant;
 import org.aerogear.connectivity.model.iOSVariant;
 import org.aerogear.connectivity.service.PushApplicationService;
+import org.aerogear.connectivity.service.cache.MetadataCache;
 
 public class PushApplicationServiceImpl implements PushApplicationService {
 
     @Inject
     private PushApplicationDao pushApplicationDao;
 
+    @Inject
+    private MetadataCache metadataCache;
+
     @Override
     public PushApplication addPushApplication(PushApplication pushApp) {
         return pushApplicationDao.create(pushApp);
@@ -48,14 +52,31 @@ public class PushApplicationServiceImpl implements PushApplicationService {
         return pushApplicationDao.findByPushApplicationID(pushApplicationID);
     }
 
+    @Override
+    public PushApplication findByPushApplicationIDWithVariants(String pushApplicationID) {
+        PushApplication pushApp = metadataCache.getPushApplication(pushApplicationID);
+        if (pushApp == null) {
+            final long generation = metadataCache.currentGeneration();
+            pushApp = pushApplicationDao.findByPushApplicationIDWithVariants(pushApplicationID);
+            if (pushApp != null) {
+                // shared by all threads: detached, with its variants
+                pushApplicationDao.detach(pushApp);
+                metadataCache.putPushApplication(pushApp, generation);
+            }
+        }
+        return pushApp;
+    }
+
     @Override
     public void addiOSVariant(PushApplication pushApp, iOSVariant iOVariant) {
+        metadataCache.invalidatePushApplication(pushApp.getPushApplicationID());
         pushApp.getIOSApps().add(iOVariant);
         pushApplicationDao.update(pushApp);
     }
 
     @Override
     public void addAndroidVariant(PushApplication pushApp, AndroidVariant androidVariant) {
+        metadataCache.invalidatePushApplication(pushApp.getPushApplicationID());
         pushApp.getAndroidApps().add(androidVariant);
         //pushApp.getMobileApplications().add(androidApp);
         pushApplicationDao.update(pushApp);
@@ -63,6 +84,7 @@ public class PushApplicationServiceImpl implements PushApplicationService {
     @Override
     public void addSimplePushVariant(PushApplication pushApp,
             SimplePushVariant simplePushVariant) {
+        metadataCache.invalidatePushApplication(pushApp.getPushApplicationID());
         pushApp.getSimplePushApps().add(simplePushVariant);
         
         pushApplicationDao.update(pushApp);
@@ -91,11 +113,13 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 
     @Override
     public PushApplication updatePushApplication(PushApplication pushApp) {
+        metadataCache.invalidatePushApplication(pushApp.getPushApplicationID());
         return pushApplicationDao.update(pushApp);
     }
 
     @Override
     public void removePushApplication(PushApplication pushApp) {
+        metadataCache.invalidatePushApplication(pushApp.getPushApplicationID());
         pushApplicationDao.delete(pushApp);
     }
 }
@@ -0,0 +1,112 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.jpa.Batches;
+import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
+import org.aerogear.connectivity.service.PushFeedbackService;
+
+/**
+ * Transactional (EJB), since it is invoked by the Push Network workers, outside of any request.
+ * The tokens are processed in batches of <code>aerogear.push.feedback.batch</code> (IN-list size).
+ */
+@Stateless
+public class PushFeedbackServiceImpl implements PushFeedbackService {
+
+    private static final int BATCH_SIZE = Configuration.getInt("aerogear.push.feedback.batch", 500);
+
+    @Inject private Logger logger;
+    @Inject private MobileVariantInstanceDao mobileVariantInstanceDao;
+
+    @Override
+    public int removeInactiveDeviceTokens(String variantID, Collection<String> deviceTokens) {
+        int removed = 0;
+        for (List<String> batch : Batches.of(deviceTokens, BATCH_SIZE)) {
+            removed += mobileVariantInstanceDao.deleteByVariantIDAndDeviceTokens(variantID, batch);
+        }
+        logger.info("Removed " + removed + " inactive installations of variant " + variantID);
+        return removed;
+    }
+
+    @Override
+    public int removeInactiveDeviceTokens(String variantID, Map<String, Date> inactiveSince) {
+        final Set<String> inactiveTokens = new HashSet<String>(inactiveSince.keySet());
+        for (List<String> batch : Batches.of(inactiveSince.keySet(), BATCH_SIZE)) {
+            for (MobileVariantInstanceImpl instance : mobileVariantInstanceDao.findByVariantIDAndDeviceTokens(variantID, batch)) {
+                final Date lastRegistered = instance.getLastRegistered();
+                if (lastRegistered != null && lastRegistered.after(inactiveSince.get(instance.getDeviceToken()))) {
+                    // the app was installed again:
+                    inactiveTokens.remove(instance.getDeviceToken());
+                }
+            }
+        }
+        // only read, the (extended) persistence context does not need to keep them:
+        mobileVariantInstanceDao.clear();
+        return removeInactiveDeviceTokens(variantID, inactiveTokens);
+    }
+
+    @Override
+    public void updateDeviceTokens(String variantID, Map<String, String> canonicalDeviceTokens) {
+        for (List<String> batch : Batches.of(canonicalDeviceTokens.keySet(), BATCH_SIZE)) {
+
+            // the already registered canonical tokens:
+            final List<String> canonicalBatch = new ArrayList<String>();
+            for (String oldToken : batch) {
+                canonicalBatch.add(canonicalDeviceTokens.get(oldToken));
+            }
+            final Map<String, MobileVariantInstanceImpl> registeredCanonicals = byDeviceToken(
+                    mobileVariantInstanceDao.findByVariantIDAndDeviceTokens(variantID, canonicalBatch));
+
+            for (MobileVariantInstanceImpl instance : mobileVariantInstanceDao.findByVariantIDAndDeviceTokens(variantID, batch)) {
+                final String canonicalToken = canonicalDeviceTokens.get(instance.getDeviceToken());
+
+                if (registeredCanonicals.containsKey(canonicalToken)) {
+                    // the device also registered with its canonical token, drop the old one:
+                    mobileVariantInstanceDao.delete(instance);
+                } else {
+                    instance.setDeviceToken(canonicalToken);
+                    mobileVariantInstanceDao.update(instance);
+                    registeredCanonicals.put(canonicalToken, instance);
+                }
+            }
+        }
+    }
+
+    private Map<String, MobileVariantInstanceImpl> byDeviceToken(List<MobileVariantInstanceImpl> instances) {
+        final Map<String, MobileVariantInstanceImpl> instancesByToken = new HashMap<String, MobileVariantInstanceImpl>();
+        for (MobileVariantInstanceImpl instance : instances) {
+            instancesByToken.put(instance.getDeviceToken(), instance);
+        }
+        return instancesByToken;
+    }
+}
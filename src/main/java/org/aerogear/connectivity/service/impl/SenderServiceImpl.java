@@ -18,35 +18,56 @@
 package org.aerogear.connectivity.service.impl;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
-import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 
+import org.aerogear.connectivity.config.Configuration;
+import org.aerogear.connectivity.jpa.Batches;
+import org.aerogear.connectivity.jpa.dao.DeviceTokenCursor;
+import org.aerogear.connectivity.jpa.dao.MobileVariantInstanceDao;
+import org.aerogear.connectivity.message.dispatch.PushNetworkExecutors;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
+import org.aerogear.connectivity.message.job.PushJob;
 import org.aerogear.connectivity.message.sender.APNsPushNotificationSender;
 import org.aerogear.connectivity.message.sender.GCMPushNotificationSender;
+import org.aerogear.connectivity.message.sender.PushNetwork;
 import org.aerogear.connectivity.message.sender.SimplePushNotificationSender;
 import org.aerogear.connectivity.message.sender.UnifiedPushMessage;
 import org.aerogear.connectivity.message.sender.annotations.APNsSender;
 import org.aerogear.connectivity.message.sender.annotations.GCMSender;
 import org.aerogear.connectivity.message.sender.annotations.SimplePushSender;
+import org.aerogear.connectivity.metrics.PushMetrics;
 import org.aerogear.connectivity.model.AndroidVariant;
-import org.aerogear.connectivity.model.MobileVariantInstanceImpl;
 import org.aerogear.connectivity.model.PushApplication;
 import org.aerogear.connectivity.model.SimplePushVariant;
 import org.aerogear.connectivity.model.iOSVariant;
 import org.aerogear.connectivity.rest.sender.messages.SelectiveSendMessage;
 import org.aerogear.connectivity.service.SenderService;
 
+import com.codahale.metrics.Timer;
+
 @Stateless
-@Asynchronous
+// a broadcast can take longer than the TX timeout, and it only reads:
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 public class SenderServiceImpl implements SenderService {
+
+    // max. number of aliases per IN-list, when resolving the aliases of a selective send:
+    private static final int ALIAS_BATCH_SIZE = Configuration.getInt("aerogear.push.alias.batch", 500);
     
+    @Inject private Logger logger;
+
+    @Inject
+    private PushNetworkExecutors executors;
     
     @Inject @GCMSender
     private GCMPushNotificationSender gcmSender; 
@@ -56,151 +77,262 @@ public class SenderServiceImpl implements SenderService {
     
     @Inject @SimplePushSender
     private SimplePushNotificationSender simplePushSender;
+
+    @Inject
+    private MobileVariantInstanceDao mobileVariantInstanceDao;
+
+    @Inject
+    private PushMetrics metrics;
     
     
     @Override
-    @Asynchronous
-    public void sendToAliases(PushApplication pushApplication, SelectiveSendMessage message) {
+    public void sendToAliases(PushApplication pushApplication, PushNetwork network, SelectiveSendMessage message, PushJob pushJob) {
         
         final List<String> submittedAliases = message.getAliases();
-        final UnifiedPushMessage unifiedPushMessage = new UnifiedPushMessage(message.getMessage());
 
-        // TODO: Make better...
+        final Timer.Context fanOut = metrics.timer("sender", PushMetrics.name(network), "fanout").time();
+        try {
+            switch (network) {
+            case IOS:
+                sendToiOSAliases(pushApplication, submittedAliases, new UnifiedPushMessage(message.getMessage()), pushJob);
+                break;
+            case ANDROID:
+                sendToAndroidAliases(pushApplication, submittedAliases, new UnifiedPushMessage(message.getMessage()), pushJob);
+                break;
+            case SIMPLE_PUSH:
+                sendToSimplePushAliases(pushApplication, submittedAliases, message.getSimplePush(), pushJob);
+                break;
+            }
+        } finally {
+            fanOut.stop();
+        }
+    }
+
+    private void sendToiOSAliases(PushApplication pushApplication, List<String> submittedAliases, final UnifiedPushMessage unifiedPushMessage, PushJob pushJob) {
+        if (submittedAliases == null) {
+            return;
+        }
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
+
+        // one payload for all variants:
+        final byte[] apnsPayload = unifiedPushMessage.getAPNsPayload();
+
         final Set<iOSVariant> iOSapps = pushApplication.getIOSApps();
-        for (iOSVariant iOSApp : iOSapps) {
-            
-            final List<String> iOSTokenPerVariant = new ArrayList<String>();
-            // get all instances
-            final Set<MobileVariantInstanceImpl> instancesPerVariant = iOSApp.getInstances();
-            for (MobileVariantInstanceImpl instance : instancesPerVariant) {
-                
-                // see if the alias does match for the instance
-                if (submittedAliases != null && submittedAliases.contains(instance.getAlias())) {
-                    // add it
-                    iOSTokenPerVariant.add(instance.getDeviceToken());
+        for (final iOSVariant iOSApp : iOSapps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.IOS, iOSApp.getVariantID());
+
+            // resolve the aliases with the (indexed) alias column, in batches:
+            for (List<String> aliases : Batches.of(submittedAliases, ALIAS_BATCH_SIZE)) {
+                final List<String> tokens = mobileVariantInstanceDao.findDeviceTokensForVariantByAliases(iOSApp.getVariantID(), null, aliases);
+                if (tokens.isEmpty()) {
+                    continue;
                 }
+                deliveries.add(submit(PushNetwork.IOS, counters, tokens.size(), new Runnable() {
+                    @Override
+                    public void run() {
+                        apnsSender.sendPushMessage(iOSApp, tokens, apnsPayload, counters);
+                    }
+                }));
             }
-            // deliver to network
-            apnsSender.sendPushMessage(iOSApp, iOSTokenPerVariant, unifiedPushMessage);
         }
+        awaitDeliveries(deliveries);
+    }
+
+    private void sendToAndroidAliases(PushApplication pushApplication, List<String> submittedAliases, final UnifiedPushMessage unifiedPushMessage, PushJob pushJob) {
+        if (submittedAliases == null) {
+            return;
+        }
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
 
-        // TODO: make better :)
         Set<AndroidVariant> androidApps = pushApplication.getAndroidApps();
-        for (AndroidVariant androidApplication : androidApps) {
-            
-            final List<String> androidTokenPerVariant = new ArrayList<String>();
-            //final GCMPushNotificationSender gcmSender = new GCMPushNotificationSender(androidApplication.getGoogleKey());
-
-            // get all instances
-            Set<MobileVariantInstanceImpl> instancesPerVariant = androidApplication.getInstances();
-            for (MobileVariantInstanceImpl instance : instancesPerVariant) {
-                
-                // see if the alias does match for the instance
-                if (submittedAliases != null && submittedAliases.contains(instance.getAlias())) {
-                    // add it
-                    androidTokenPerVariant.add(instance.getDeviceToken());
+        for (final AndroidVariant androidApplication : androidApps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.ANDROID, androidApplication.getVariantID());
+
+            for (List<String> aliases : Batches.of(submittedAliases, ALIAS_BATCH_SIZE)) {
+                final List<String> tokens = mobileVariantInstanceDao.findDeviceTokensForVariantByAliases(androidApplication.getVariantID(), null, aliases);
+                if (tokens.isEmpty()) {
+                    continue;
                 }
+                deliveries.add(submit(PushNetwork.ANDROID, counters, tokens.size(), new Runnable() {
+                    @Override
+                    public void run() {
+                        gcmSender.sendPushMessage(androidApplication, tokens, unifiedPushMessage, counters);
+                    }
+                }));
             }
-            gcmSender.sendPushMessage(androidTokenPerVariant, unifiedPushMessage, androidApplication.getGoogleKey());
         }
-        
-        // TODO: make better :)
-        final Map<String, String> simplePushCategoriesAndValues = message.getSimplePush();
+        awaitDeliveries(deliveries);
+    }
+
+    private void sendToSimplePushAliases(PushApplication pushApplication, List<String> submittedAliases, final Map<String, String> simplePushCategoriesAndValues, PushJob pushJob) {
         if (simplePushCategoriesAndValues == null) {
             return;
         }
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
+
+        // NO alias at all: only the channels that have no alias are notified
+        final List<List<String>> aliasBatches = (submittedAliases == null)
+                ? Collections.<List<String>>singletonList(null)
+                : Batches.of(submittedAliases, ALIAS_BATCH_SIZE);
 
         Set<SimplePushVariant> spApps = pushApplication.getSimplePushApps();
-        for (SimplePushVariant simplePushVariant : spApps) {
-            
-            // the specified category names.....
-            final Set<String> categoriesToNotify = simplePushCategoriesAndValues.keySet();
-            final Map<String, List<String>> tokensPerCategory = new LinkedHashMap<String, List<String>>();
+        for (final SimplePushVariant simplePushVariant : spApps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.SIMPLE_PUSH, simplePushVariant.getVariantID());
 
-            // add empty list for every category:
-            for (String category : categoriesToNotify) {
-                tokensPerCategory.put(category, new ArrayList<String>());
-            }
-            
-            Set<MobileVariantInstanceImpl> allSimplePushVarinatInstancesPerVariant = simplePushVariant.getInstances();
-            for (MobileVariantInstanceImpl instance : allSimplePushVarinatInstancesPerVariant) {
-
-                String categoryFromInstance = instance.getCategory();
-                // Does the category match one of the submitted ones?
-                // Does the alias also match ??
-                if (tokensPerCategory.get(categoryFromInstance) != null)  {
-                    
-                    String currentAlias = instance.getAlias();
-                    // NO alias at all .....???
-                    // alias matches......
-                    if ((submittedAliases == null && currentAlias == null) || (submittedAliases.contains(currentAlias)) )
-
-                    // add the token, to the matching category list:
-                    tokensPerCategory.get(categoryFromInstance).add(instance.getDeviceToken());
+            // the specified category names.....
+            for (final Map.Entry<String, String> categoryAndValue : simplePushCategoriesAndValues.entrySet()) {
+                for (List<String> aliases : aliasBatches) {
+                    final List<String> tokens = mobileVariantInstanceDao.findDeviceTokensForVariantByAliases(
+                            simplePushVariant.getVariantID(), categoryAndValue.getKey(), aliases);
+                    if (tokens.isEmpty()) {
+                        continue;
+                    }
+                    deliveries.add(submit(PushNetwork.SIMPLE_PUSH, counters, tokens.size(), new Runnable() {
+                        @Override
+                        public void run() {
+                            simplePushSender.sendMessage(simplePushVariant.getPushNetworkURL(), categoryAndValue.getValue(), tokens, counters);
+                        }
+                    }));
                 }
             }
-            // send:
-            for (String category : categoriesToNotify) {
-                simplePushSender.sendMessage(simplePushVariant.getPushNetworkURL(), simplePushCategoriesAndValues.get(category), tokensPerCategory.get(category));    
-            }
         }
+        awaitDeliveries(deliveries);
     }
 
     
     @Override
-    @Asynchronous
-    public void broadcast(PushApplication pushApplication,
-            Map<String, ? extends Object> jsonMap) {
+    public void broadcast(PushApplication pushApplication, PushNetwork network,
+            Map<String, ? extends Object> jsonMap, PushJob pushJob) {
 
         final UnifiedPushMessage unifiedPushMessage = new UnifiedPushMessage(jsonMap);
-        
-        // TODO: DISPATCH TO A QUEUE .....
+
+        final Timer.Context fanOut = metrics.timer("sender", PushMetrics.name(network), "fanout").time();
+        try {
+            switch (network) {
+            case IOS:
+                broadcastToiOS(pushApplication, unifiedPushMessage, pushJob);
+                break;
+            case ANDROID:
+                broadcastToAndroid(pushApplication, unifiedPushMessage, pushJob);
+                break;
+            case SIMPLE_PUSH:
+                broadcastToSimplePush(pushApplication, unifiedPushMessage, pushJob);
+                break;
+            }
+        } finally {
+            fanOut.stop();
+        }
+    }
+
+    private void broadcastToiOS(PushApplication pushApplication, final UnifiedPushMessage unifiedPushMessage, PushJob pushJob) {
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
+
+        // one payload for all variants:
+        final byte[] apnsPayload = unifiedPushMessage.getAPNsPayload();
+
         final Set<iOSVariant> iOSapps = pushApplication.getIOSApps();
-        for (iOSVariant iOSApp : iOSapps) {
+        for (final iOSVariant iOSApp : iOSapps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.IOS, iOSApp.getVariantID());
             
-            // get all the tokens:
-            final Set<String> iOStokenz = new HashSet<String>();
-            Set<MobileVariantInstanceImpl> iOSinstallations = iOSApp
-                    .getInstances();
-            for (MobileVariantInstanceImpl mobileApplicationInstance : iOSinstallations) {
-                iOStokenz.add(mobileApplicationInstance.getDeviceToken());
+            // stream the tokens, page by page, and deliver the pages in parallel:
+            final DeviceTokenCursor iOStokenz = new DeviceTokenCursor(mobileVariantInstanceDao, iOSApp.getVariantID());
+            while (iOStokenz.hasNext()) {
+                final List<String> tokens = iOStokenz.next();
+                deliveries.add(submit(PushNetwork.IOS, counters, tokens.size(), new Runnable() {
+                    @Override
+                    public void run() {
+                        apnsSender.sendPushMessage(iOSApp, tokens, apnsPayload, counters);
+                    }
+                }));
             }
-
-            apnsSender.sendPushMessage(iOSApp, iOStokenz, unifiedPushMessage);
         }
+        awaitDeliveries(deliveries);
+    }
 
-        // TODO: DISPATCH TO A QUEUE .....
-        Set<AndroidVariant> androidApps = pushApplication.getAndroidApps();
-        for (AndroidVariant androidApplication : androidApps) {
+    private void broadcastToAndroid(PushApplication pushApplication, final UnifiedPushMessage unifiedPushMessage, PushJob pushJob) {
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
 
-            final List<String> androidtokenz = new ArrayList<String>();
+        Set<AndroidVariant> androidApps = pushApplication.getAndroidApps();
+        for (final AndroidVariant androidApplication : androidApps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.ANDROID, androidApplication.getVariantID());
 
-            Set<MobileVariantInstanceImpl> androidApplications = androidApplication
-                    .getInstances();
-            for (MobileVariantInstanceImpl mobileApplicationInstance : androidApplications) {
-                androidtokenz.add(mobileApplicationInstance.getDeviceToken());
+            final DeviceTokenCursor androidtokenz = new DeviceTokenCursor(mobileVariantInstanceDao, androidApplication.getVariantID());
+            while (androidtokenz.hasNext()) {
+                final List<String> tokens = androidtokenz.next();
+                deliveries.add(submit(PushNetwork.ANDROID, counters, tokens.size(), new Runnable() {
+                    @Override
+                    public void run() {
+                        gcmSender.sendPushMessage(androidApplication, tokens, unifiedPushMessage, counters);
+                    }
+                }));
             }
-            gcmSender.sendPushMessage(androidtokenz, unifiedPushMessage, androidApplication.getGoogleKey());
         }
-        
-        // TODO: DISPATCH TO A QUEUE .....
+        awaitDeliveries(deliveries);
+    }
+
+    private void broadcastToSimplePush(PushApplication pushApplication, final UnifiedPushMessage unifiedPushMessage, PushJob pushJob) {
+        final List<Future<?>> deliveries = new ArrayList<Future<?>>();
+
         Set<SimplePushVariant> spApps = pushApplication.getSimplePushApps();
-        for (SimplePushVariant simplePushVariant : spApps) {
-            
-            final List<String> simplePushTokenz = new ArrayList<String>();
+        for (final SimplePushVariant simplePushVariant : spApps) {
+            final DeliveryCounters counters = pushJob.countersFor(PushNetwork.SIMPLE_PUSH, simplePushVariant.getVariantID());
             
-            Set<MobileVariantInstanceImpl> simplePushVarinatInstances = simplePushVariant.getInstances();
-            for (MobileVariantInstanceImpl instance : simplePushVarinatInstances) {
-                // only the BROADCAST channels:
-                if ("broadcast".equalsIgnoreCase(instance.getCategory())) {
-                    simplePushTokenz.add(instance.getDeviceToken());
+            // only the BROADCAST channels:
+            final DeviceTokenCursor simplePushTokenz = new DeviceTokenCursor(mobileVariantInstanceDao,
+                    simplePushVariant.getVariantID(), "broadcast", DeviceTokenCursor.DEFAULT_PAGE_SIZE);
+            while (simplePushTokenz.hasNext()) {
+                final List<String> tokens = simplePushTokenz.next();
+                deliveries.add(submit(PushNetwork.SIMPLE_PUSH, counters, tokens.size(), new Runnable() {
+                    @Override
+                    public void run() {
+                        simplePushSender.sendMessage(
+                                simplePushVariant.getPushNetworkURL(),
+                                unifiedPushMessage.getSimplePush(),
+                                tokens, counters);
+                    }
+                }));
+            }
+        }
+        awaitDeliveries(deliveries);
+    }
+
+    /**
+     * Hands a chunk of tokens to the worker pool of the network, and counts and times its delivery.
+     */
+    private Future<?> submit(PushNetwork network, DeliveryCounters counters, int tokens, final Runnable delivery) {
+        final String networkName = PushMetrics.name(network);
+        final Timer deliveryTimer = metrics.timer("sender", networkName, "delivery");
+
+        counters.addQueued(tokens);
+        metrics.meter("sender", networkName, "tokens").mark(tokens);
+
+        return executors.forNetwork(network).submit(new Runnable() {
+            @Override
+            public void run() {
+                final Timer.Context timer = deliveryTimer.time();
+                try {
+                    delivery.run();
+                } finally {
+                    timer.stop();
                 }
             }
-            simplePushSender.sendMessage(
-                    simplePushVariant.getPushNetworkURL(),
-                    (String) unifiedPushMessage.getData().get("simple-push"), // TODO: add a getter for simple-push
-                    simplePushTokenz);
+        });
+    }
+
+    /**
+     * Waits until all submitted deliveries are done, so that the dispatch job is only
+     * acknowledged once the message was handed over to the Push Network.
+     */
+    private void awaitDeliveries(List<Future<?>> deliveries) {
+        for (Future<?> delivery : deliveries) {
+            try {
+                delivery.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.severe("Delivery to Push Network failed: " + e.getCause());
+            }
         }
     }
 }
-
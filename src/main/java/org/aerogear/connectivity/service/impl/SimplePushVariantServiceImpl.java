@@ -24,10 +24,18 @@ import javax.inject.Inject;
 import org.aerogear.connectivity.jpa.dao.SimplePushVariantDao;
 import org.aerogear.connectivity.model.SimplePushVariant;
 import org.aerogear.connectivity.service.SimplePushVariantService;
+import org.aerogear.connectivity.service.MobileVariantInstanceService;
+import org.aerogear.connectivity.service.cache.MetadataCache;
 
 public class SimplePushVariantServiceImpl implements
         SimplePushVariantService {
 
+    @Inject
+    private MetadataCache metadataCache;
+
+    @Inject
+    private MobileVariantInstanceService mobileVariantInstanceService;
+
     @Inject
     private SimplePushVariantDao simplePushApplicationDao;
     
@@ -50,11 +58,14 @@ public class SimplePushVariantServiceImpl implements
     @Override
     public SimplePushVariant updateSimplePushVariant(
             SimplePushVariant simplePushVariant) {
+        metadataCache.invalidateVariant(simplePushVariant.getVariantID());
         return simplePushApplicationDao.update(simplePushVariant);
     }
 
     @Override
     public void removeSimplePushVariant(SimplePushVariant simplePushVariant) {
+        metadataCache.invalidateVariant(simplePushVariant.getVariantID());
+        mobileVariantInstanceService.removeMobileVariantInstancesForVariant(simplePushVariant.getVariantID());
         simplePushApplicationDao.delete(simplePushVariant);
     }
 }
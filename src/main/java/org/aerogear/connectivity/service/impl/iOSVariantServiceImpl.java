@@ -21,12 +21,24 @@ import java.util.List;
 
 import javax.inject.Inject;
 
+import org.aerogear.connectivity.message.cache.APNsCache;
 import org.aerogear.connectivity.jpa.dao.iOSVariantDao;
 import org.aerogear.connectivity.model.iOSVariant;
 import org.aerogear.connectivity.service.iOSVariantService;
+import org.aerogear.connectivity.service.MobileVariantInstanceService;
+import org.aerogear.connectivity.service.cache.MetadataCache;
 
 public class iOSVariantServiceImpl implements iOSVariantService {
 
+    @Inject
+    private MetadataCache metadataCache;
+
+    @Inject
+    private APNsCache apnsCache;
+
+    @Inject
+    private MobileVariantInstanceService mobileVariantInstanceService;
+
     @Inject
     private iOSVariantDao iOSApplicationDao;
 
@@ -47,11 +59,17 @@ public class iOSVariantServiceImpl implements iOSVariantService {
 
     @Override
     public iOSVariant updateiOSVariant(iOSVariant iOSApp) {
+        metadataCache.invalidateVariant(iOSApp.getVariantID());
+        // reconnect with the (new) certificate:
+        apnsCache.evict(iOSApp.getVariantID());
         return iOSApplicationDao.update(iOSApp);
     }
 
     @Override
     public void removeiOSVariant(iOSVariant iOSApp) {
+        metadataCache.invalidateVariant(iOSApp.getVariantID());
+        apnsCache.evict(iOSApp.getVariantID());
+        mobileVariantInstanceService.removeMobileVariantInstancesForVariant(iOSApp.getVariantID());
         iOSApplicationDao.delete(iOSApp);
     }
 
@@ -0,0 +1,251 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import org.aerogear.connectivity.message.cache.GCMCache;
+import org.aerogear.connectivity.message.cache.GCMTransport;
+import org.aerogear.connectivity.message.job.DeliveryCounters;
+import org.aerogear.connectivity.metrics.PushMetrics;
+import org.aerogear.connectivity.model.AndroidVariant;
+import org.aerogear.connectivity.service.PushFeedbackService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.android.gcm.server.Message;
+import com.google.android.gcm.server.MulticastResult;
+
+public class GCMPushNotificationSenderTest {
+
+    private final StubTransport transport = new StubTransport();
+    private final StubFeedbackService feedbackService = new StubFeedbackService();
+    private final DeliveryCounters counters = new DeliveryCounters(PushNetwork.ANDROID);
+    private final AndroidVariant variant = new AndroidVariant();
+    private GCMPushNotificationSender sender;
+
+    @Before
+    public void createSender() {
+        variant.setVariantID("variant");
+        variant.setGoogleKey("key");
+
+        sender = new GCMPushNotificationSender();
+        sender.logger = Logger.getLogger(GCMPushNotificationSenderTest.class.getName());
+        sender.metrics = new PushMetrics();
+        sender.pushFeedbackService = feedbackService;
+        sender.cache = new GCMCache() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public GCMTransport getSenderForAPIKey(String googleAPIKey) {
+                return transport;
+            }
+        };
+        sender.createRetryScheduler();
+    }
+
+    @After
+    public void shutdownSender() {
+        sender.shutdownRetryScheduler();
+    }
+
+    @Test
+    public void temporarilyFailedPicksUnavailableAndInternalServerError() throws IOException {
+        final List<String> chunk = Arrays.asList("a", "b", "c", "d");
+        transport.response = "{\"multicast_id\":1,\"success\":1,\"failure\":3,\"canonical_ids\":0,\"results\":["
+                + "{\"message_id\":\"1:1\"},{\"error\":\"Unavailable\"},{\"error\":\"NotRegistered\"},{\"error\":\"InternalServerError\"}]}";
+
+        final MulticastResult result = transport.sendNoRetry(message(), chunk);
+
+        assertEquals(Arrays.asList("b", "d"), sender.temporarilyFailed(chunk, result));
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() {
+        for (int i = 0; i < 100; i++) {
+            final long first = sender.backoff(1);
+            assertTrue(first >= GCMPushNotificationSender.BACKOFF_INITIAL_DELAY / 2);
+            assertTrue(first <= GCMPushNotificationSender.BACKOFF_INITIAL_DELAY);
+
+            final long third = sender.backoff(3);
+            assertTrue(third >= GCMPushNotificationSender.BACKOFF_INITIAL_DELAY * 2);
+            assertTrue(third <= GCMPushNotificationSender.BACKOFF_INITIAL_DELAY * 4);
+
+            // no overflow of the shift, for a large number of retries:
+            final long capped = sender.backoff(64);
+            assertTrue(capped >= GCMPushNotificationSender.MAX_BACKOFF_DELAY / 2);
+            assertTrue(capped <= GCMPushNotificationSender.MAX_BACKOFF_DELAY);
+        }
+    }
+
+    @Test
+    public void deliveryResultKeepsTheIndexesOfFailedChunks() throws IOException {
+        transport.response = "{\"multicast_id\":1,\"success\":1,\"failure\":1,\"canonical_ids\":0,\"results\":["
+                + "{\"message_id\":\"1:1\"},{\"error\":\"NotRegistered\"}]}";
+
+        final GCMDeliveryResult deliveryResult = new GCMDeliveryResult();
+        deliveryResult.add(Arrays.asList("a", "b"), transport.sendNoRetry(message(), Arrays.asList("a", "b")));
+        deliveryResult.add(Arrays.asList("c", "d", "e"), null);
+        deliveryResult.add(Arrays.asList("f", "g"), transport.sendNoRetry(message(), Arrays.asList("f", "g")));
+
+        assertEquals(7, deliveryResult.getTotal());
+        assertEquals(7, deliveryResult.getResults().size());
+        assertEquals(2, deliveryResult.getSuccess());
+        assertEquals(5, deliveryResult.getFailure());
+        assertEquals("1:1", deliveryResult.getResults().get(0).getMessageId());
+        assertNull(deliveryResult.getResults().get(2));
+        assertNull(deliveryResult.getResults().get(4));
+        assertEquals("f", deliveryResult.getRegistrationIDs().get(5));
+        assertEquals("1:1", deliveryResult.getResults().get(5).getMessageId());
+        assertEquals("NotRegistered", deliveryResult.getResults().get(6).getErrorCodeName());
+    }
+
+    @Test
+    public void goneTokensAreRemovedAndCanonicalOnesRewritten() {
+        transport.response = "{\"multicast_id\":1,\"success\":2,\"failure\":3,\"canonical_ids\":1,\"results\":["
+                + "{\"message_id\":\"1:1\"},"
+                + "{\"error\":\"NotRegistered\"},"
+                + "{\"error\":\"InvalidRegistration\"},"
+                + "{\"message_id\":\"1:2\",\"registration_id\":\"d2\"},"
+                + "{\"error\":\"MismatchSenderId\"}]}";
+
+        final GCMDeliveryResult deliveryResult = sender.sendPushMessage(variant, Arrays.asList("a", "b", "c", "d", "e"), pushMessage(), counters);
+
+        assertEquals(5, deliveryResult.getTotal());
+        assertEquals(Arrays.asList("b", "c"), feedbackService.removed);
+        assertEquals(Collections.singletonMap("d", "d2"), feedbackService.canonical);
+        assertEquals(2, counters.getSent());
+        assertEquals(3, counters.getFailed());
+        assertEquals(2, counters.getPruned());
+        assertEquals(0, counters.getRetrying());
+    }
+
+    @Test
+    public void pendingRetriesFailOnShutdown() {
+        transport.response = "{\"multicast_id\":1,\"success\":1,\"failure\":2,\"canonical_ids\":0,\"results\":["
+                + "{\"message_id\":\"1:1\"},{\"error\":\"Unavailable\"},{\"error\":\"InternalServerError\"}]}";
+
+        sender.sendPushMessage(variant, Arrays.asList("a", "b", "c"), pushMessage(), counters);
+
+        // scheduled with a backoff of at least half a second:
+        assertEquals(1, counters.getSent());
+        assertEquals(0, counters.getFailed());
+        assertEquals(2, counters.getRetrying());
+        assertTrue(feedbackService.removed.isEmpty());
+
+        sender.shutdownRetryScheduler();
+
+        assertEquals(2, counters.getFailed());
+        assertEquals(0, counters.getRetrying());
+    }
+
+    private static Message message() {
+        return new Message.Builder().addData("alert", "HELLO!").build();
+    }
+
+    private static UnifiedPushMessage pushMessage() {
+        final Map<String, Object> submitted = new LinkedHashMap<String, Object>();
+        submitted.put("alert", "HELLO!");
+        return new UnifiedPushMessage(submitted);
+    }
+
+    /**
+     * Answers every multicast request with the given JSON, without a connection.
+     */
+    private static class StubTransport extends GCMTransport {
+
+        private String response;
+
+        StubTransport() {
+            super("key", "http://localhost/gcm/send", 1000, 1, new Semaphore(1));
+        }
+
+        @Override
+        protected HttpURLConnection post(String url, String contentType, String body) throws IOException {
+            return new HttpURLConnection(new URL(url)) {
+                @Override
+                public int getResponseCode() {
+                    return HTTP_OK;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return new ByteArrayInputStream(response.getBytes("UTF-8"));
+                }
+
+                @Override
+                public void connect() {
+                }
+
+                @Override
+                public void disconnect() {
+                }
+
+                @Override
+                public boolean usingProxy() {
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * Records the feedback, instead of applying it to the installations.
+     */
+    private static class StubFeedbackService implements PushFeedbackService {
+
+        private final List<String> removed = new ArrayList<String>();
+        private final Map<String, String> canonical = new LinkedHashMap<String, String>();
+
+        @Override
+        public int removeInactiveDeviceTokens(String variantID, Collection<String> deviceTokens) {
+            removed.addAll(deviceTokens);
+            return deviceTokens.size();
+        }
+
+        @Override
+        public int removeInactiveDeviceTokens(String variantID, Map<String, Date> inactiveSince) {
+            removed.addAll(inactiveSince.keySet());
+            return inactiveSince.size();
+        }
+
+        @Override
+        public void updateDeviceTokens(String variantID, Map<String, String> canonicalDeviceTokens) {
+            canonical.putAll(canonicalDeviceTokens);
+        }
+    }
+}
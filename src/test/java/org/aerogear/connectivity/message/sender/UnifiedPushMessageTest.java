@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aerogear.connectivity.message.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UnifiedPushMessageTest {
+
+    @Test
+    public void submittedMapIsNotModified() {
+        final Map<String, Object> submitted = new LinkedHashMap<String, Object>();
+        submitted.put("alert", "HELLO!");
+        submitted.put("sound", "default");
+        submitted.put("badge", 7);
+        submitted.put("simple-push", "version=123");
+        submitted.put("key", "value");
+
+        final UnifiedPushMessage message = new UnifiedPushMessage(submitted);
+
+        assertEquals(5, submitted.size());
+        assertEquals("HELLO!", message.getAlert());
+        assertEquals("default", message.getSound());
+        assertEquals(7, message.getBadge());
+        assertEquals("version=123", message.getSimplePush());
+        assertEquals(1, message.getData().size());
+        assertEquals("value", message.getData().get("key"));
+    }
+
+    @Test
+    public void encodingsAreBuiltOnce() {
+        final Map<String, Object> submitted = new LinkedHashMap<String, Object>();
+        submitted.put("alert", "HELLO!");
+        submitted.put("count", 3);
+
+        final UnifiedPushMessage message = new UnifiedPushMessage(submitted);
+
+        assertSame(message.getAPNsPayload(), message.getAPNsPayload());
+        assertSame(message.getGCMMessage(), message.getGCMMessage());
+
+        final String apnsPayload = new String(message.getAPNsPayload());
+        assertTrue(apnsPayload.contains("\"alert\":\"HELLO!\""));
+        assertFalse(apnsPayload.contains("simple-push"));
+        assertEquals("3", message.getGCMMessage().getData().get("count"));
+    }
+}